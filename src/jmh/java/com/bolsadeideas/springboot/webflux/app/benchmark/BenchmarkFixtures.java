@@ -0,0 +1,35 @@
+package com.bolsadeideas.springboot.webflux.app.benchmark;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Category;
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {}
+
+    static Category category() {
+        Category category = new Category("Electronic");
+        category.setId(new ObjectId().toHexString());
+        return category;
+    }
+
+    static List<Product> products(int size) {
+        Category category = category();
+        List<Product> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Product product = new Product("Samsung Galaxy S".concat(String.valueOf(i)), 1000.00 + i, category);
+            product.setId(new ObjectId().toHexString());
+            product.setCreatedAt(new Date());
+            product.setImage(Integer.toHexString(i).concat(".png"));
+            product.setThumbnail("thumb-".concat(product.getImage()));
+            product.setVersion(1L);
+            products.add(product);
+        }
+        return products;
+    }
+}
@@ -0,0 +1,97 @@
+package com.bolsadeideas.springboot.webflux.app.benchmark;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.ImageBlob;
+import com.bolsadeideas.springboot.webflux.app.model.service.image.ContentAddressedImageStorage;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The upload path of {@link ContentAddressedImageStorage#store}: streaming the parts to a temporary file while
+ * hashing them, naming the blob and registering it. The same content is stored on every call, so after the first
+ * one each call takes the duplicate branch and the directory does not grow. Mongo is stubbed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageStoreBenchmark {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    @Param({"65536", "1048576"})
+    private int size;
+
+    private ContentAddressedImageStorage storage;
+
+    private Path directory;
+
+    private byte[] content;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("image-store-benchmark");
+        content = new byte[size];
+        new Random(42).nextBytes(content);
+
+        ReactiveMongoTemplate template = Mockito.mock(ReactiveMongoTemplate.class);
+        Mockito.when(template.upsert(ArgumentMatchers.any(Query.class), ArgumentMatchers.any(UpdateDefinition.class), ArgumentMatchers.eq(ImageBlob.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+
+        storage = new ContentAddressedImageStorage();
+        ReflectionTestUtils.setField(storage, "reactiveMongoTemplate", template);
+        ReflectionTestUtils.setField(storage, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(storage, "path", directory.toString());
+        ReflectionTestUtils.setField(storage, "gcInterval", Duration.ofDays(1));
+        ReflectionTestUtils.setField(storage, "gcGracePeriod", Duration.ofDays(1));
+        ReflectionTestUtils.invokeMethod(storage, "start");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        ReflectionTestUtils.invokeMethod(storage, "stop");
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public String store() {
+        return storage.store(parts(), "My Photo: front.JPG").block();
+    }
+
+    private Flux<DataBuffer> parts() {
+        return Flux.range(0, (size + CHUNK_SIZE - 1) / CHUNK_SIZE)
+                .map(i -> DefaultDataBufferFactory.sharedInstance.wrap(ByteBuffer.wrap(content, i * CHUNK_SIZE, Math.min(CHUNK_SIZE, size - i * CHUNK_SIZE))));
+    }
+}
@@ -0,0 +1,91 @@
+package com.bolsadeideas.springboot.webflux.app.benchmark;
+
+import com.bolsadeideas.springboot.webflux.app.handler.ProductHandler;
+import com.bolsadeideas.springboot.webflux.app.model.documents.Category;
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.service.impl.CategoryService;
+import com.bolsadeideas.springboot.webflux.app.model.service.impl.ProductService;
+import jakarta.validation.Validation;
+import org.bson.types.ObjectId;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProductHandler#create} up to the built response: bean validation, category resolution and the
+ * error list of an invalid product. Persistence is stubbed, so only the request path itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductCreateBenchmark {
+
+    private ProductHandler handler;
+
+    private Category category;
+
+    @Setup
+    public void setUp() {
+        category = BenchmarkFixtures.category();
+
+        ProductService productService = Mockito.mock(ProductService.class);
+        Mockito.when(productService.save(ArgumentMatchers.any(Product.class))).thenAnswer(invocation -> {
+            Product product = invocation.getArgument(0);
+            product.setId(new ObjectId().toHexString());
+            return Mono.just(product);
+        });
+        Mockito.when(productService.withoutImages(ArgumentMatchers.any(Product.class))).thenCallRealMethod();
+        Mockito.when(productService.withStoredCategory(ArgumentMatchers.any(Product.class))).thenCallRealMethod();
+        CategoryService categoryService = Mockito.mock(CategoryService.class);
+        Mockito.when(categoryService.findById(category.getId())).thenReturn(Mono.just(category));
+        ReflectionTestUtils.setField(productService, "categoryService", categoryService);
+
+        handler = new ProductHandler();
+        ReflectionTestUtils.setField(handler, "productService", productService);
+        ReflectionTestUtils.setField(handler, "categoryService", categoryService);
+        ReflectionTestUtils.setField(handler, "validator",
+                new SpringValidatorAdapter(Validation.buildDefaultValidatorFactory().getValidator()));
+
+        // a benchmark of the wrong branch would still report a throughput
+        expect(HttpStatus.CREATED, createValid());
+        expect(HttpStatus.BAD_REQUEST, createInvalid());
+    }
+
+    private static void expect(HttpStatus status, ServerResponse response) {
+        if (!status.equals(response.statusCode())) {
+            throw new IllegalStateException("Expected ".concat(status.toString()).concat(" but got ").concat(response.statusCode().toString()));
+        }
+    }
+
+    @Benchmark
+    public ServerResponse createValid() {
+        Product product = new Product("Samsung S25", 3200500.00, category);
+        return handler.create(MockServerRequest.builder().body(Mono.just(product))).block();
+    }
+
+    @Benchmark
+    public ServerResponse createInvalid() {
+        Product product = new Product("", null, category);
+        return handler.create(MockServerRequest.builder().body(Mono.just(product))).block();
+    }
+}
@@ -0,0 +1,72 @@
+package com.bolsadeideas.springboot.webflux.app.benchmark;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductView;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson encoding and decoding of product lists, with the same mapper defaults the application codecs use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductJsonBenchmark {
+
+    @Param({"10", "1000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+
+    private ObjectWriter summaryWriter;
+
+    private JavaType listType;
+
+    private List<Product> products;
+
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        summaryWriter = objectMapper.writerWithView(ProductView.Summary.class);
+        listType = objectMapper.getTypeFactory().constructCollectionType(List.class, Product.class);
+        products = BenchmarkFixtures.products(size);
+        json = objectMapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return objectMapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] encodeSummaryView() throws IOException {
+        return summaryWriter.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public List<Product> decode() throws IOException {
+        return objectMapper.readValue(json, listType);
+    }
+}
@@ -0,0 +1,86 @@
+package com.bolsadeideas.springboot.webflux.app.benchmark;
+
+import com.bolsadeideas.springboot.webflux.app.handler.ProductStreamWriter;
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductView;
+import com.bolsadeideas.springboot.webflux.app.model.repository.ProductRepository;
+import com.bolsadeideas.springboot.webflux.app.model.service.impl.ProductService;
+import com.bolsadeideas.springboot.webflux.app.model.service.memory.InMemoryProductStore;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Reactor pipelines of {@link ProductService} over an in-memory repository, and NDJSON streaming
+ * of the catalog through {@link ProductStreamWriter} into a mock response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductPipelineBenchmark {
+
+    @Param({"1000"})
+    private int size;
+
+    private ProductService productService;
+
+    private ProductStreamWriter streamWriter;
+
+    private List<Product> products;
+
+    @Setup
+    public void setUp() {
+        products = BenchmarkFixtures.products(size);
+
+        ProductRepository productRepository = Mockito.mock(ProductRepository.class);
+        Mockito.when(productRepository.findAll()).thenReturn(Flux.fromIterable(products));
+        productService = new ProductService();
+        ReflectionTestUtils.setField(productService, "productRepository", productRepository);
+        // left in mongo mode, so reads go through the repository
+        ReflectionTestUtils.setField(productService, "productStore", new InMemoryProductStore());
+
+        streamWriter = new ProductStreamWriter();
+        ReflectionTestUtils.setField(streamWriter, "objectMapper", Jackson2ObjectMapperBuilder.json().build());
+        ReflectionTestUtils.setField(streamWriter, "flushSize", 64);
+        ReflectionTestUtils.setField(streamWriter, "flushInterval", Duration.ofMillis(200));
+    }
+
+    @Benchmark
+    public List<Product> findAllWthNameInUpperCase() {
+        return productService.findAllWthNameInUpperCase().collectList().block();
+    }
+
+    @Benchmark
+    public MockServerHttpResponse writeNdjson(Stream stream) {
+        MockServerHttpResponse response = new MockServerHttpResponse();
+        streamWriter.writeNdjson(response, Flux.fromIterable(products), stream.view).block();
+        return response;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Stream {
+
+        @Param({"FULL", "SUMMARY"})
+        private ProductView view;
+    }
+}
@@ -0,0 +1,33 @@
+package com.bolsadeideas.springboot.webflux.app.load;
+
+import com.mongodb.ConnectionString;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.springframework.boot.autoconfigure.mongo.MongoConnectionDetails;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Points the application at an in-memory Mongo wire-protocol server on a random port, so the load tests
+ * need neither a running Mongo nor credentials. Change streams are not supported by it, keep the feed off.
+ */
+@TestConfiguration(proxyBeanMethods = false)
+public class InProcessMongoConfig {
+
+    @Bean(destroyMethod = "shutdownNow")
+    public MongoServer mongoServer() {
+        MongoServer server = new MongoServer(new MemoryBackend());
+        server.bind();
+        return server;
+    }
+
+    @Bean
+    public MongoConnectionDetails mongoConnectionDetails(MongoServer mongoServer) {
+        InetSocketAddress address = mongoServer.getLocalAddress();
+        ConnectionString connectionString = new ConnectionString("mongodb://".concat(address.getHostString())
+                .concat(":").concat(String.valueOf(address.getPort())).concat("/reactive_course"));
+        return () -> connectionString;
+    }
+}
@@ -0,0 +1,109 @@
+package com.bolsadeideas.springboot.webflux.app.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Fires a number of requests with a bounded number in flight and records every latency, failures included,
+ * into an HdrHistogram. Each scenario leaves its percentile distribution in {@code <name>.hgrm} and one line
+ * (throughput and percentiles in milliseconds) in {@code summary.csv}.
+ */
+public class LoadDriver {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadDriver.class);
+
+    private static final String SUMMARY_HEADER = "scenario,requests,errors,seconds,throughput,p50,p90,p99,p999,max\n";
+
+    private final int concurrency;
+
+    private final Path reports;
+
+    public record Result(String scenario, long requests, long errors, double seconds, Histogram histogram) {
+
+        public double throughput() {
+            return requests / seconds;
+        }
+
+        public double percentile(double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+
+    public LoadDriver(int concurrency, Path reports) {
+        this.concurrency = concurrency;
+        this.reports = reports;
+    }
+
+    public Result run(String scenario, int requests, IntFunction<Mono<?>> call) {
+        Histogram histogram = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+        AtomicLong errors = new AtomicLong();
+
+        long start = System.nanoTime();
+        Flux.range(0, requests)
+                .flatMap(i -> Mono.defer(() -> {
+                    long begin = System.nanoTime();
+                    return call.apply(i)
+                            .then()
+                            .doOnError(e -> {
+                                errors.incrementAndGet();
+                                log.debug("{} request {} failed: {}", scenario, i, e.toString());
+                            })
+                            .onErrorResume(e -> Mono.empty())
+                            .then(Mono.fromRunnable(() -> histogram.recordValue(
+                                    Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin),
+                                            histogram.getHighestTrackableValue()))));
+                }), concurrency)
+                .blockLast();
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        Result result = new Result(scenario, requests, errors.get(), seconds, histogram);
+        write(result);
+        log.info("{}: {} requests, {} errors, {} req/s, p50 {} ms, p99 {} ms, max {} ms", scenario, requests,
+                result.errors(), format(result.throughput()), format(result.percentile(50)),
+                format(result.percentile(99)), format(result.percentile(100)));
+        return result;
+    }
+
+    private void write(Result result) {
+        try {
+            Files.createDirectories(reports);
+            try (PrintStream out = new PrintStream(Files.newOutputStream(reports.resolve(result.scenario().concat(".hgrm"))),
+                    false, StandardCharsets.UTF_8)) {
+                // recorded in microseconds, reported in milliseconds
+                result.histogram().outputPercentileDistribution(out, 1000.0);
+            }
+
+            Path summary = reports.resolve("summary.csv");
+            if (Files.notExists(summary)) {
+                Files.writeString(summary, SUMMARY_HEADER);
+            }
+            String line = String.join(",", result.scenario(), String.valueOf(result.requests()),
+                    String.valueOf(result.errors()), format(result.seconds()), format(result.throughput()),
+                    format(result.percentile(50)), format(result.percentile(90)), format(result.percentile(99)),
+                    format(result.percentile(99.9)), format(result.percentile(100)));
+            Files.writeString(summary, line.concat("\n"), StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,217 @@
+package com.bolsadeideas.springboot.webflux.app.load;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Category;
+import com.bolsadeideas.springboot.webflux.app.model.service.ICategoryService;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Drives the v1 (annotated) and v2 (functional) product APIs end to end over HTTP: create, detail and list (both
+ * also revalidated with If-None-Match), update, image upload and delete, each at {@code load.concurrency} requests
+ * in flight, {@code load.requests} times. Run with {@code mvn -P load-test test}; reports land in {@code load.reports}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"eureka.client.enabled=false",
+		"spring.cloud.discovery.enabled=false",
+		"config.change-feed.enabled=false",
+		"config.cache.categories.watch=false",
+		"config.upload.path=${java.io.tmpdir}/webflux-load-test/",
+		"management.tracing.sampling.probability=0"
+})
+@Import(InProcessMongoConfig.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ProductLoadTest {
+
+	private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 16);
+
+	private static final int REQUESTS = Integer.getInteger("load.requests", 500);
+
+	private static final Path REPORTS = Path.of(System.getProperty("load.reports", "target/load-test"));
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private ICategoryService categoryService;
+
+	@Value("${config.upload.path}")
+	private String uploadPath;
+
+	private ConnectionProvider connections;
+
+	private WebClient client;
+
+	private LoadDriver driver;
+
+	private Category category;
+
+	private byte[] image;
+
+	private record Api(String name, String basePath, String createPath, String uploadPath,
+					   Function<JsonNode, String> createdId) {}
+
+	@BeforeAll
+	void setUp() throws IOException {
+		Files.deleteIfExists(REPORTS.resolve("summary.csv"));
+		Files.createDirectories(Path.of(uploadPath));
+		connections = ConnectionProvider.create("load-test");
+		client = WebClient.builder()
+				.baseUrl("http://localhost:".concat(String.valueOf(port)))
+				.clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+				.codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(-1))
+				.build();
+		driver = new LoadDriver(CONCURRENCY, REPORTS);
+		category = categoryService.save(new Category("Load")).block();
+		image = png();
+	}
+
+	// the server shuts down gracefully, which waits for the connections the client keeps alive until they are closed
+	@AfterAll
+	void tearDown() {
+		connections.disposeLater().block();
+	}
+
+	@Test
+	void annotatedApi() {
+		drive(new Api("v1", "/v1/product", "/v1/product/create-validated", "/v1/product/upload/image/",
+				body -> body.path("product").path("id").asText(null)));
+	}
+
+	@Test
+	void functionalApi() {
+		drive(new Api("v2", "/api/v2/products", "/api/v2/products", "/api/v2/products/upload/",
+				body -> body.path("id").asText(null)));
+	}
+
+	private void drive(Api api) {
+		ConcurrentLinkedQueue<String> created = new ConcurrentLinkedQueue<>();
+		List<LoadDriver.Result> results = new ArrayList<>();
+
+		results.add(driver.run(api.name().concat("-create"), REQUESTS, i -> client.post()
+				.uri(api.createPath())
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(Map.of("name", "Load product ".concat(String.valueOf(i)),
+						"price", 10.0 + i,
+						"category", Map.of("id", category.getId())))
+				.retrieve()
+				.bodyToMono(JsonNode.class)
+				.map(api.createdId())
+				.doOnNext(created::add)));
+
+		List<String> ids = List.copyOf(created);
+		Assertions.assertFalse(ids.isEmpty(), "No product was created");
+
+		Map<String, String> etags = new ConcurrentHashMap<>();
+		results.add(driver.run(api.name().concat("-detail"), REQUESTS, i -> client.get()
+				.uri(api.basePath().concat("/{id}"), ids.get(i % ids.size()))
+				.accept(MediaType.APPLICATION_JSON)
+				.retrieve()
+				.toEntity(byte[].class)
+				.doOnNext(entity -> etags.put(ids.get(i % ids.size()), entity.getHeaders().getETag()))));
+
+		results.add(driver.run(api.name().concat("-detail-not-modified"), REQUESTS, i -> client.get()
+				.uri(api.basePath().concat("/{id}"), ids.get(i % ids.size()))
+				.accept(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.IF_NONE_MATCH, etags.get(ids.get(i % ids.size())))
+				.exchangeToMono(ProductLoadTest::notModified)));
+
+		AtomicReference<String> listEtag = new AtomicReference<>();
+		results.add(driver.run(api.name().concat("-list"), REQUESTS, i -> client.get()
+				.uri(api.basePath())
+				.accept(MediaType.APPLICATION_JSON)
+				.retrieve()
+				.toEntity(byte[].class)
+				.doOnNext(entity -> listEtag.set(entity.getHeaders().getETag()))));
+
+		results.add(driver.run(api.name().concat("-list-not-modified"), REQUESTS, i -> client.get()
+				.uri(api.basePath())
+				.accept(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.IF_NONE_MATCH, listEtag.get())
+				.exchangeToMono(ProductLoadTest::notModified)));
+
+		results.add(driver.run(api.name().concat("-update"), REQUESTS, i -> client.put()
+				.uri(api.basePath().concat("/{id}"), ids.get(i % ids.size()))
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(Map.of("name", "Load product ".concat(String.valueOf(i)).concat(" updated"),
+						"price", 20.0 + i))
+				.retrieve()
+				.toBodilessEntity()));
+
+		results.add(driver.run(api.name().concat("-upload"), REQUESTS, i -> client.post()
+				.uri(api.uploadPath().concat("{id}"), ids.get(i % ids.size()))
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(multipart()))
+				.retrieve()
+				.toBodilessEntity()));
+
+		results.add(driver.run(api.name().concat("-delete"), ids.size(), i -> client.delete()
+				.uri(api.basePath().concat("/{id}"), ids.get(i))
+				.retrieve()
+				.toBodilessEntity()));
+
+		for (LoadDriver.Result result : results) {
+			Assertions.assertEquals(0, result.errors(), result.scenario().concat(" had failed requests"));
+		}
+	}
+
+	private static Mono<Void> notModified(ClientResponse response) {
+		return response.statusCode() == HttpStatus.NOT_MODIFIED
+				? response.releaseBody()
+				: response.createError().then();
+	}
+
+	private MultiValueMap<String, HttpEntity<?>> multipart() {
+		MultipartBodyBuilder builder = new MultipartBodyBuilder();
+		builder.part("file", new ByteArrayResource(image)).filename("load.png").contentType(MediaType.IMAGE_PNG);
+		return builder.build();
+	}
+
+	private static byte[] png() throws IOException {
+		BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < image.getWidth(); x++) {
+			for (int y = 0; y < image.getHeight(); y++) {
+				image.setRGB(x, y, (x * 31 + y * 17) & 0xFFFFFF);
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+}
@@ -1,9 +1,13 @@
 package com.bolsadeideas.springboot.webflux.app;
 
+import com.bolsadeideas.springboot.webflux.app.config.IndexBootstrap;
 import com.bolsadeideas.springboot.webflux.app.model.documents.Category;
 import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
-import com.bolsadeideas.springboot.webflux.app.model.repository.CategoryRepository;
-import com.bolsadeideas.springboot.webflux.app.model.repository.ProductRepository;
+import com.bolsadeideas.springboot.webflux.app.model.service.impl.CategoryService;
+import com.bolsadeideas.springboot.webflux.app.model.service.impl.CategorySummaryService;
+import com.bolsadeideas.springboot.webflux.app.model.service.impl.ProductService;
+import com.bolsadeideas.springboot.webflux.app.model.service.memory.InMemoryProductStore;
+import com.bolsadeideas.springboot.webflux.app.model.service.search.ProductSearchIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,14 +26,26 @@ public class SpringBootWebfluxApirestApplication implements CommandLineRunner {
 
 
 	@Autowired
-	private ProductRepository productRepository;
+	private ProductService productService;
 
 	@Autowired
-	private CategoryRepository categoryRepository;
+	private CategoryService categoryService;
 
 	@Autowired
 	private ReactiveMongoTemplate reactiveMongoTemplate;
 
+	@Autowired
+	private IndexBootstrap indexBootstrap;
+
+	@Autowired
+	private ProductSearchIndex productSearchIndex;
+
+	@Autowired
+	private InMemoryProductStore productStore;
+
+	@Autowired
+	private CategorySummaryService categorySummaryService;
+
 	private static final Logger log = LoggerFactory.getLogger(SpringBootWebfluxApirestApplication.class);
 
 	public static void main(String[] args) {
@@ -38,14 +54,21 @@ public class SpringBootWebfluxApirestApplication implements CommandLineRunner {
 
 	@Override
 	public void run(String... args) throws Exception {
-		reactiveMongoTemplate.dropCollection("products").subscribe();
-		reactiveMongoTemplate.dropCollection("categories").subscribe();
+		// indexes are in place before the seed data goes in and before the application reports ready
+		reactiveMongoTemplate.dropCollection("products")
+				.then(reactiveMongoTemplate.dropCollection("categories"))
+				.then(indexBootstrap.ensureIndexes())
+				.then(categoryService.reload())
+				.then(productStore.load())
+				.then(productSearchIndex.rebuild(productService.findAll()))
+				.then(categorySummaryService.refreshAll())
+				.block();
 
 		Category electronic = new Category("Electronic");
 		Category gaming = new Category("Gaming");
 
 		Flux.just(electronic, gaming)
-				.flatMap(c -> categoryRepository.save(c))
+				.flatMap(c -> categoryService.save(c))
 				.thenMany(
 						Flux.just(new Product("Samsung A70", 63000.00, electronic),
 										new Product("Samsung A63", 250000.00, electronic),
@@ -57,7 +80,7 @@ public class SpringBootWebfluxApirestApplication implements CommandLineRunner {
 										new Product("Play Station 5 (PS5)", 1340000.00, gaming))
 								.flatMap(product -> {
 									product.setCreatedAt(new Date());
-									return productRepository.save(product);
+									return productService.save(product);
 								})
 				)
 				.subscribe(product -> log.info(product.getId()));
@@ -0,0 +1,85 @@
+package com.bolsadeideas.springboot.webflux.app.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Creates the indexes declared on the documents ({@code @Indexed}, {@code @CompoundIndex}) that are missing
+ * from their collections. Existing indexes are matched by name and left untouched. Unique indexes resolved from
+ * an embedded document (the category copied into every product) are skipped, as they would allow a single owner per value.
+ */
+@Component
+public class IndexBootstrap {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexBootstrap.class);
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private MongoMappingContext mappingContext;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    public Mono<Void> ensureIndexes() {
+        IndexResolver resolver = IndexResolver.create(mappingContext);
+
+        return Flux.fromIterable(mappingContext.getPersistentEntities())
+                .filter(entity -> entity.isAnnotationPresent(Document.class))
+                .concatMap(entity -> ensureIndexes(entity, resolver))
+                .then();
+    }
+
+    private Mono<Void> ensureIndexes(MongoPersistentEntity<?> entity, IndexResolver resolver) {
+        ReactiveIndexOperations indexOps = reactiveMongoTemplate.indexOps(entity.getCollection());
+        Timer timer = Timer.builder("mongo.index.bootstrap")
+                .tag("collection", entity.getCollection())
+                .register(meterRegistry);
+
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return indexOps.getIndexInfo()
+                    .map(IndexInfo::getName)
+                    .collect(Collectors.toSet())
+                    .flatMapMany(existing -> Flux.fromIterable(resolver.resolveIndexFor(entity.getTypeInformation()))
+                            .filter(index -> !isEmbeddedUnique(index))
+                            .filter(index -> !existing.contains(nameOf(index))))
+                    .concatMap(indexOps::ensureIndex)
+                    .collectList()
+                    .doOnNext(created -> {
+                        long elapsed = System.nanoTime() - start;
+                        timer.record(elapsed, TimeUnit.NANOSECONDS);
+                        log.info("Indexes of {} ready in {} ms, created {}", entity.getCollection(),
+                                TimeUnit.NANOSECONDS.toMillis(elapsed), created);
+                    });
+        }).then();
+    }
+
+    private static boolean isEmbeddedUnique(IndexDefinition index) {
+        return Boolean.TRUE.equals(index.getIndexOptions().get("unique"))
+                && index.getIndexKeys().keySet().stream().allMatch(key -> key.contains("."));
+    }
+
+    private static String nameOf(IndexDefinition index) {
+        Object name = index.getIndexOptions().get("name");
+        return name == null ? null : name.toString();
+    }
+}
@@ -0,0 +1,20 @@
+package com.bolsadeideas.springboot.webflux.app.config;
+
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.observability.ContextProviderFactory;
+import org.springframework.data.mongodb.observability.MongoObservationCommandListener;
+
+@Configuration
+public class ObservabilityConfig {
+
+    // command timers and pool gauges come from the actuator, this adds a span per Mongo command under the request's trace
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoObservation(ObservationRegistry observationRegistry) {
+        return settings -> settings
+                .contextProvider(ContextProviderFactory.create(observationRegistry))
+                .addCommandListener(new MongoObservationCommandListener(observationRegistry));
+    }
+}
@@ -18,8 +18,16 @@ public class RouterFunctionConfig {
     @Bean
     public RouterFunction<ServerResponse> routes(ProductHandler handler) {
         return route(GET("/api/v2/products"), handler::listAll)
+                .andRoute(GET("/api/v2/products/page"), handler::listPage)
+                .andRoute(GET("/api/v2/products/search"), handler::search)
+                .andRoute(GET("/api/v2/products/changes"), handler::changes)
+                .andRoute(GET("/api/v2/products/categories"), handler::categorySummaries)
+                .andRoute(GET("/api/v2/products/top"), handler::topByPrice)
+                .andRoute(GET("/api/v2/products/replay"), handler::replay)
                 .andRoute(GET(GET_PUT_DEL), handler::detail)
+                .andRoute(GET("/api/v2/products/{id}/image"), handler::image)
                 .andRoute(POST("/api/v2/products"), handler::create)
+                .andRoute(POST("/api/v2/products/bulk"), handler::bulk)
                 .andRoute(PUT(GET_PUT_DEL), handler::update)
                 .andRoute(DELETE(GET_PUT_DEL), handler::delete)
                 .andRoute(POST("/api/v2/products/upload/{id}"), handler::uploadImage)
@@ -0,0 +1,19 @@
+package com.bolsadeideas.springboot.webflux.app.config;
+
+import com.bolsadeideas.springboot.webflux.app.handler.ProductChangeSocketHandler;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+
+import java.util.Map;
+
+@Configuration
+public class WebSocketConfig {
+
+    @Bean
+    public HandlerMapping webSocketMapping(ProductChangeSocketHandler changeSocketHandler) {
+        // ordered before the annotated controllers and the router functions
+        return new SimpleUrlHandlerMapping(Map.of("/ws/products/changes", changeSocketHandler), -1);
+    }
+}
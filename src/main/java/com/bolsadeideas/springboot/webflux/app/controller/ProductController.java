@@ -1,24 +1,49 @@
 package com.bolsadeideas.springboot.webflux.app.controller;
 
+import com.bolsadeideas.springboot.webflux.app.handler.ClientStreamLimiter;
+import com.bolsadeideas.springboot.webflux.app.handler.ProductStreamWriter;
+import com.bolsadeideas.springboot.webflux.app.model.documents.CategorySummary;
 import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductChange;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductFilter;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductPage;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductVersion;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductView;
+import com.bolsadeideas.springboot.webflux.app.model.service.feed.ProductChangeFeed;
+import com.bolsadeideas.springboot.webflux.app.model.service.image.ImageProcessor;
+import com.bolsadeideas.springboot.webflux.app.model.service.image.ImageStorage;
+import com.bolsadeideas.springboot.webflux.app.model.service.image.ProductImages;
+import com.bolsadeideas.springboot.webflux.app.model.service.impl.CategoryService;
+import com.bolsadeideas.springboot.webflux.app.model.service.impl.CategorySummaryService;
 import com.bolsadeideas.springboot.webflux.app.model.service.impl.ProductService;
+import com.fasterxml.jackson.annotation.JsonView;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.io.File;
 import java.net.URI;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.UUID;
 
 @RestController
 @RequestMapping("/v1/product")
@@ -27,57 +52,203 @@ public class ProductController {
     @Autowired
     private ProductService productService;
 
-    @Value("${config.upload.path}")
-    private String path;
+    @Autowired
+    private ProductStreamWriter streamWriter;
 
-    @PostMapping("/create-with-image")
-    public Mono<ResponseEntity<Product>> createWithImg(Product product, @RequestPart FilePart file){
+    @Autowired
+    private ImageProcessor imageProcessor;
+
+    @Autowired
+    private ImageStorage imageStorage;
+
+    @Autowired
+    private ProductImages productImages;
+
+    @Autowired
+    private ProductChangeFeed changeFeed;
+
+    @Autowired
+    private CategorySummaryService categorySummaryService;
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private ClientStreamLimiter streamLimiter;
 
-        product.setImage(UUID.randomUUID().toString().concat("-").concat(file.filename())
-                .replace(" ", "")
-                .replace(":", "")
-                .replace("\\", ""));
+    @Value("${config.image.cache-max-age:7d}")
+    private Duration imageCacheMaxAge;
 
-        return file.transferTo(new File(path.concat(product.getImage()))).then(productService.save(product))
+    @PostMapping("/create-with-image")
+    public Mono<ResponseEntity<Product>> createWithImg(Product product, @RequestPart FilePart file){
+        return productService.withStoredCategory(product)
+                .flatMap(prod -> imageStorage.store(file.content(), file.filename()))
+                .flatMap(image -> productService.saveWithImage(product, image))
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()))
+                .doOnNext(imageProcessor::submit)
                 .map(prod -> ResponseEntity
-                        .created(URI.create("/v1/product/".concat(product.getId())))
+                        .created(URI.create("/v1/product/".concat(prod.getId())))
                         .contentType(MediaType.APPLICATION_JSON)
                         .body(prod));
     }
 
     @PostMapping("/upload/image/{id}")
     public Mono<ResponseEntity<Product>> uploadImg(@PathVariable String id, @RequestPart FilePart file){
-        return productService.findById(id).flatMap(prod -> {
-            prod.setImage(UUID.randomUUID().toString().concat("-").concat(file.filename())
-                    .replace(" ", "")
-                    .replace(":", "")
-                    .replace("\\", ""));
-
-            return file.transferTo(new File(path.concat(prod.getImage()))).then(productService.save(prod));
-        }).map(ResponseEntity::ok)
+        return productService.findById(id).flatMap(prod -> imageStorage.store(file.content(), file.filename())
+                .flatMap(image -> productService.saveWithImage(prod, image)))
+        .doOnNext(imageProcessor::submit)
+        .map(ResponseEntity::ok)
         .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
+    @GetMapping("/{id}/image")
+    public Mono<ResponseEntity<Resource>> viewImg(@PathVariable String id, @RequestParam(defaultValue = "original") String variant){
+        return productService.findById(id)
+                .flatMap(prod -> productImages.find(prod, variant))
+                // ETag and Last-Modified make the result handler answer 304 on its own,
+                // and the Resource body is written with Range support and zero-copy transfer
+                .map(image -> ResponseEntity.ok()
+                        .contentType(image.contentType())
+                        .lastModified(image.lastModified())
+                        .eTag(image.etag())
+                        .cacheControl(CacheControl.maxAge(imageCacheMaxAge).cachePublic())
+                        .body(image.resource()))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
     @GetMapping
-    public Mono<ResponseEntity<Flux<Product>>> listAll(){
+    public Mono<ResponseEntity<Flux<Product>>> listAll(@RequestParam Map<String, String> params){
+        // the projected views have their own mappings, any other view name is refused as on v2
+        return toView(params.get("view")).then(list(params, ProductView.FULL));
+    }
+
+    // produces keeps these JSON-only, so NDJSON and SSE requests for a view still reach the streaming mappings
+    @GetMapping(params = "view=summary", produces = MediaType.APPLICATION_JSON_VALUE)
+    @JsonView(ProductView.Summary.class)
+    public Mono<ResponseEntity<Flux<Product>>> listSummaries(@RequestParam Map<String, String> params){
+        return list(params, ProductView.SUMMARY);
+    }
+
+    @GetMapping(params = "view=card", produces = MediaType.APPLICATION_JSON_VALUE)
+    @JsonView(ProductView.Card.class)
+    public Mono<ResponseEntity<Flux<Product>>> listCards(@RequestParam Map<String, String> params){
+        return list(params, ProductView.CARD);
+    }
+
+    private Mono<ResponseEntity<Flux<Product>>> list(Map<String, String> params, ProductView view){
+        // with the ETag set the result handler answers If-None-Match with a 304 before subscribing to the body
+        return toFilter(params).flatMap(filter -> productService.findVersion(filter).map(version -> ResponseEntity
+                .ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(view.name().toLowerCase(Locale.ROOT).concat("-").concat(version))
+                .body(productService.findAll(filter, view))));
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<Void> streamAll(@RequestParam Map<String, String> params, ServerHttpResponse response){
+        return toView(params.get("view")).zipWith(toFilter(params))
+                .flatMap(query -> streamWriter.writeNdjson(response, productService.streamAll(query.getT2(), query.getT1()), query.getT1()));
+    }
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Mono<Void> streamEvents(@RequestParam Map<String, String> params, ServerHttpResponse response){
+        return toView(params.get("view")).zipWith(toFilter(params))
+                .flatMap(query -> streamWriter.writeEvents(response, productService.streamAll(query.getT2(), query.getT1()), query.getT1()));
+    }
+
+    private static Mono<ProductView> toView(String view){
+        return Mono.fromCallable(() -> ProductView.of(view))
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+    }
+
+    private static Mono<ProductFilter> toFilter(Map<String, String> params){
+        return Mono.fromCallable(() -> ProductFilter.from(params))
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+    }
+
+    @GetMapping("/page")
+    public Mono<ResponseEntity<?>> listPage(@RequestParam(required = false) String cursor,
+                                           @RequestParam(required = false) String size){
+        // the size is parsed rather than bound, so that a bad one gets the same message as on v2
+        return Mono.defer(() -> productService.findPage(cursor, ProductPage.parseSize(size)))
+                .<ResponseEntity<?>>map(page -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(page))
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest().body(String.valueOf(e.getMessage()))));
+    }
+
+    @GetMapping("/search")
+    public Mono<ResponseEntity<Flux<Product>>> search(@RequestParam String q, @RequestParam(required = false) Integer limit){
         return Mono.just(ResponseEntity
                 .ok()
                 .contentType(MediaType.APPLICATION_JSON)
-                .body(productService.findAll()));
+                .body(productService.search(q, limit)));
+    }
+
+    @GetMapping("/categories")
+    public Mono<ResponseEntity<Flux<CategorySummary>>> categorySummaries(){
+        return Mono.just(ResponseEntity
+                .ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(categorySummaryService.findAll()));
+    }
+
+    @GetMapping("/top")
+    public Mono<ResponseEntity<Flux<Product>>> topByPrice(@RequestParam(required = false) String categoryId,
+                                                          @RequestParam(required = false) Integer limit){
+        return Mono.just(ResponseEntity
+                .ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(productService.findTopByPrice(categoryId, limit)));
+    }
+
+    @GetMapping(value = "/replay", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Product> replay(@RequestParam(required = false) String interval,
+                                @RequestParam(required = false) Integer batch,
+                                @RequestParam(required = false) Integer repeat,
+                                @RequestParam(defaultValue = "false") boolean upperCase,
+                                ServerHttpRequest request){
+        String client = request.getRemoteAddress() == null ? "unknown" : request.getRemoteAddress().getAddress().getHostAddress();
+        try {
+            Flux<Product> products = productService.replay(interval == null ? null : DurationStyle.detectAndParse(interval), batch, repeat, upperCase);
+            return streamLimiter.limit(client, products);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<ProductChange>> changes(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                                        @RequestParam(required = false) String resumeToken){
+        try {
+            return changeFeed.events(lastEventId != null ? lastEventId : resumeToken);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
     }
 
     @GetMapping("{id}")
-    public Mono<ResponseEntity<Product>> view(@PathVariable String id){
-        return productService.findById(id).map(prod ->
-            ResponseEntity.ok()
+    public Mono<ResponseEntity<Product>> view(@PathVariable String id, ServerWebExchange exchange){
+        // the validators come from the product that is sent, so a write in between can not pair a body with a stale ETag
+        return productService.findById(id).map(prod -> {
+            ProductVersion version = ProductVersion.of(prod);
+            if (exchange.checkNotModified(version.getTag(), version.getLastModified())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(version::addTo).<Product>build();
+            }
+            return ResponseEntity.ok()
                     .contentType(MediaType.APPLICATION_JSON)
-                    .body(prod)
-        ).defaultIfEmpty(ResponseEntity.notFound().build());
+                    .headers(version::addTo)
+                    .body(prod);
+        }).defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
     @PostMapping
     public Mono<ResponseEntity<Product>> create(@RequestBody Product product){
-        return productService.save(product)
+        return productService.withStoredCategory(productService.withoutImages(product))
+                .flatMap(productService::save)
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()))
                 .map(prod -> ResponseEntity
                         .created(URI.create("/v1/product/".concat(prod.getId())))
                         .contentType(MediaType.APPLICATION_JSON)
@@ -88,13 +259,19 @@ public class ProductController {
     public Mono<ResponseEntity<Map<String, Object>>> create(@Valid @RequestBody Mono<Product> monoProduct){
         Map<String, Object> response = new HashMap<>();
 
-        return monoProduct.flatMap( product -> {
+        return monoProduct.map(productService::withoutImages).flatMap( product -> {
             response.put("product", product);
-            return productService.save(product)
+            return categoryService.findById(product.getCategory().getId())
+                    .flatMap(category -> {
+                        product.setCategory(category);
+                        return productService.save(product);
+                    })
                     .map(prod -> ResponseEntity
                             .created(URI.create("/v1/product/".concat(prod.getId())))
                             .contentType(MediaType.APPLICATION_JSON)
-                            .body(response));
+                            .body(response))
+                    .defaultIfEmpty(ResponseEntity.badRequest().body(Map.of("product", product,
+                            "errors", List.of("Field category.id does not exist"))));
         }).onErrorResume(t -> Mono.just(t).cast(WebExchangeBindException.class)
                 .flatMap(e -> Mono.just(e.getFieldErrors()))
                 .flatMapMany(Flux::fromIterable)
@@ -108,21 +285,34 @@ public class ProductController {
 
     @PutMapping("/{id}")
     public Mono<ResponseEntity<Product>> edit(@RequestBody Product product, @PathVariable String id) {
-        return productService.findById(id)
-                .flatMap(prod -> {
-                        prod.setName(product.getName());
-                        prod.setPrice(product.getPrice());
-                        return productService.save(prod);
-                }).map(prod -> ResponseEntity.created(URI.create("/v1/product/".concat(prod.getId())))
+        // only the fields sent are changed, the others keep their stored value
+        Map<String, Object> fields = new HashMap<>();
+        if (product.getName() != null) {
+            fields.put("name", product.getName());
+        }
+        if (product.getPrice() != null) {
+            fields.put("price", product.getPrice());
+        }
+
+        Mono<Map<String, Object>> update = product.getCategory() == null
+                ? Mono.just(fields)
+                : productService.withStoredCategory(product).map(prod -> {
+                    fields.put("category", prod.getCategory());
+                    return fields;
+                });
+
+        return update.flatMap(changes -> productService.patch(id, changes, product.getVersion()))
+                .map(prod -> ResponseEntity.created(URI.create("/v1/product/".concat(prod.getId())))
                         .contentType(MediaType.APPLICATION_JSON)
                         .body(prod))
-                .defaultIfEmpty(ResponseEntity.notFound().build());
+                .defaultIfEmpty(ResponseEntity.notFound().build())
+                .onErrorResume(OptimisticLockingFailureException.class, e -> Mono.just(new ResponseEntity<>(HttpStatus.CONFLICT)))
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
     }
 
     @DeleteMapping("/{id}")
     public Mono<ResponseEntity<Void>> delete(@PathVariable String id){
-        return productService.findById(id).flatMap(prod -> {
-            return productService.delete(prod).then(Mono.just(new ResponseEntity<Void>(HttpStatus.NO_CONTENT)));
-        }).defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+        return productService.deleteById(id)
+                .map(deleted -> new ResponseEntity<Void>(deleted ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND));
     }
 }
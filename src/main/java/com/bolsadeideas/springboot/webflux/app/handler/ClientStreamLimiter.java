@@ -0,0 +1,45 @@
+package com.bolsadeideas.springboot.webflux.app.handler;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caps how many long-lived streams a single client (by remote address) can hold open at the same time.
+ */
+@Component
+public class ClientStreamLimiter {
+
+    @Value("${config.replay.max-streams-per-client:2}")
+    private int maxStreamsPerClient;
+
+    private final Map<String, Integer> open = new ConcurrentHashMap<>();
+
+    /**
+     * Holds a slot for the client from the subscription to the stream until it terminates or is cancelled. A
+     * subscription finding every slot taken fails with a 429 before anything is written.
+     */
+    public <T> Flux<T> limit(String client, Flux<T> stream) {
+        // taken and given back by the same subscription, so a stream assembled but never subscribed holds nothing
+        return Flux.using(() -> acquire(client), slot -> stream, this::release);
+    }
+
+    private String acquire(String client) {
+        Integer count = open.merge(client, 1, Integer::sum);
+        if (count > maxStreamsPerClient) {
+            release(client);
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "The client ".concat(client).concat(" already has ")
+                    .concat(String.valueOf(maxStreamsPerClient)).concat(" open streams"));
+        }
+        return client;
+    }
+
+    private void release(String client) {
+        open.computeIfPresent(client, (key, count) -> count == 1 ? null : count - 1);
+    }
+}
@@ -0,0 +1,58 @@
+package com.bolsadeideas.springboot.webflux.app.handler;
+
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductChange;
+import com.bolsadeideas.springboot.webflux.app.model.service.feed.ProductChangeFeed;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Pushes the product change feed as one JSON text message per change. Clients resume with
+ * the {@code resumeToken} query parameter, and are closed with {@code SERVICE_OVERLOAD}
+ * when they fall further behind than the feed buffer allows.
+ */
+@Component
+public class ProductChangeSocketHandler implements WebSocketHandler {
+
+    @Autowired
+    private ProductChangeFeed changeFeed;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        String resumeToken = UriComponentsBuilder.fromUri(session.getHandshakeInfo().getUri())
+                .build()
+                .getQueryParams()
+                .getFirst("resumeToken");
+
+        Flux<ProductChange> changes;
+        try {
+            changes = changeFeed.changes(resumeToken);
+        } catch (IllegalStateException e) {
+            return session.close(CloseStatus.POLICY_VIOLATION.withReason(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return session.close(CloseStatus.BAD_DATA.withReason(e.getMessage()));
+        }
+
+        return session.send(changes.map(change -> session.textMessage(toJson(change))))
+                .onErrorResume(Exceptions::isOverflow, e -> session.close(CloseStatus.SERVICE_OVERLOAD));
+    }
+
+    private String toJson(ProductChange change) {
+        try {
+            return objectMapper.writeValueAsString(change);
+        } catch (JsonProcessingException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+}
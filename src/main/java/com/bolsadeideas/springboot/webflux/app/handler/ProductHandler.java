@@ -1,141 +1,443 @@
 package com.bolsadeideas.springboot.webflux.app.handler;
 
 import com.bolsadeideas.springboot.webflux.app.model.documents.Category;
+import com.bolsadeideas.springboot.webflux.app.model.documents.CategorySummary;
 import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.dto.BulkItemResult;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductFilter;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductPage;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductVersion;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductView;
+import com.bolsadeideas.springboot.webflux.app.model.service.feed.ProductChangeFeed;
+import com.bolsadeideas.springboot.webflux.app.model.service.image.ImageProcessor;
+import com.bolsadeideas.springboot.webflux.app.model.service.image.ImageStorage;
+import com.bolsadeideas.springboot.webflux.app.model.service.image.ProductImages;
+import com.bolsadeideas.springboot.webflux.app.model.service.impl.CategoryService;
+import com.bolsadeideas.springboot.webflux.app.model.service.impl.CategorySummaryService;
 import com.bolsadeideas.springboot.webflux.app.model.service.impl.ProductService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2CodecSupport;
 import org.springframework.http.codec.multipart.FilePart;
-import org.springframework.http.codec.multipart.FormFieldPart;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.FormPartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.Errors;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.Validator;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.io.File;
 import java.net.URI;
-import java.util.UUID;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static org.springframework.web.reactive.function.BodyInserters.fromValue;
 
 @Component
 public class ProductHandler {
 
+
     @Autowired
     private ProductService productService;
 
-    @Value("${config.upload.path}")
-    private String path;
-
     @Autowired
     private Validator validator;
 
+    @Autowired
+    private ProductStreamWriter streamWriter;
+
+    @Autowired
+    private ImageProcessor imageProcessor;
+
+    @Autowired
+    private ImageStorage imageStorage;
+
+    @Autowired
+    private ProductImages productImages;
+
+    @Autowired
+    private ProductChangeFeed changeFeed;
+
+    @Autowired
+    private CategorySummaryService categorySummaryService;
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private ClientStreamLimiter streamLimiter;
+
+    @Value("${config.bulk.chunk-size:500}")
+    private int bulkChunkSize;
+
+    @Value("${config.image.cache-max-age:7d}")
+    private Duration imageCacheMaxAge;
+
+    @Value("${config.upload.max-file-size:10MB}")
+    private DataSize maxFileSize;
+
     public Mono<ServerResponse> createWithImage(ServerRequest req){
-        Mono<Product> monoProd = req.multipartData().map(mt -> {
-            FormFieldPart name = (FormFieldPart) mt.toSingleValueMap().get("name");
-            FormFieldPart price = (FormFieldPart) mt.toSingleValueMap().get("price");
-            FormFieldPart categoryId = (FormFieldPart) mt.toSingleValueMap().get("category.id");
-            FormFieldPart categoryName = (FormFieldPart) mt.toSingleValueMap().get("category.name");
+        Map<String, String> fields = new HashMap<>();
+        AtomicReference<String> image = new AtomicReference<>();
+
+        // a single pass over the multipart body: fields are kept as they arrive and the file goes straight to disk
+        return req.bodyToFlux(PartEvent.class)
+                .windowUntil(PartEvent::isLast)
+                .concatMap(partEvents -> partEvents.switchOnFirst((signal, events) -> {
+                    if(signal.get() instanceof FormPartEvent field){
+                        fields.put(field.name(), field.value());
+                        return events.then();
+                    }
+                    if(signal.get() instanceof FilePartEvent file && "file".equals(file.name())){
+                        return imageStorage.store(limitSize(events.map(PartEvent::content)), file.filename())
+                                .doOnNext(image::set)
+                                .then();
+                    }
+                    return events.doOnNext(event -> DataBufferUtils.release(event.content())).then();
+                }))
+                .then(Mono.defer(() -> {
+                    Category cat = new Category(fields.get("category.name"));
+                    cat.setId(fields.get("category.id"));
+
+                    Product product = new Product(fields.get("name"), parsePrice(fields.get("price")), cat);
 
-            Category cat = new Category(categoryName.value());
-            cat.setId(categoryId.value());
+                    // a stored image that ends up unused is left to the storage garbage collection
+                    return validateAndResolve(product).flatMap(errors -> {
+                        if(image.get() == null){
+                            errors.add("The Field file must not be null");
+                        }
+                        if(!errors.isEmpty()){
+                            return ServerResponse.badRequest().body(fromValue(errors));
+                        }
+                        return productService.saveWithImage(product, image.get())
+                                .doOnNext(imageProcessor::submit)
+                                .flatMap(prod -> ServerResponse.created(URI.create("/api/v2/products".concat(prod.getId())))
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .body(fromValue(prod)));
+                    });
+                }));
+    }
 
-            return new Product(name.value(), Double.valueOf(price.value()), cat);
+    private Flux<DataBuffer> limitSize(Flux<DataBuffer> content) {
+        AtomicLong received = new AtomicLong();
+        return content.handle((buffer, sink) -> {
+            if(received.addAndGet(buffer.readableByteCount()) > maxFileSize.toBytes()){
+                DataBufferUtils.release(buffer);
+                sink.error(new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "The file exceeds ".concat(maxFileSize.toString())));
+            }else {
+                sink.next(buffer);
+            }
         });
+    }
 
-        return req.multipartData().map( multipart -> multipart.toSingleValueMap().get("file"))
-                .cast(FilePart.class)
-                .flatMap(file ->
-                        monoProd.flatMap( product -> {
-                            product.setImage(UUID.randomUUID().toString().concat("-").concat(file.filename())
-                                    .replace(" ","")
-                                    .replace(":","")
-                                    .replace("\\",""));
-                            return file.transferTo(new File(path.concat(product.getImage()))).then(productService.save(product));
-                        })).flatMap(product -> ServerResponse.created(URI.create("/api/v2/products".concat(product.getId())))
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .body(fromValue(product)));
+    private static Double parsePrice(String price) {
+        try {
+            return price == null ? null : Double.valueOf(price);
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
+    private List<String> validate(Product product) {
+        Errors errors = new BeanPropertyBindingResult(product, Product.class.getName());
+        validator.validate(product, errors);
+
+        return errors.getFieldErrors().stream()
+                .map(fieldError -> "The Field ".concat(fieldError.getField()).concat(" ").concat(fieldError.getDefaultMessage()))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private Mono<List<String>> validateAndResolve(Product product) {
+        List<String> errors = validate(product);
+        if(!errors.isEmpty()){
+            return Mono.just(errors);
+        }
+        return productService.withStoredCategory(product)
+                .thenReturn(errors)
+                .onErrorResume(IllegalArgumentException.class, e -> {
+                    errors.add(e.getMessage());
+                    return Mono.just(errors);
+                });
+    }
 
     public Mono<ServerResponse> uploadImage(ServerRequest req){
         String id = req.pathVariable("id");
         return req.multipartData().map( multipart -> multipart.toSingleValueMap().get("file"))
                 .cast(FilePart.class)
                 .flatMap(file ->
-                    productService.findById(id).flatMap( product -> {
-                        product.setImage(UUID.randomUUID().toString().concat("-").concat(file.filename())
-                                .replace(" ","")
-                                .replace(":","")
-                                .replace("\\",""));
-                        return file.transferTo(new File(path.concat(product.getImage()))).then(productService.save(product));
-                    })).flatMap(product -> ServerResponse.created(URI.create("/api/v2/products".concat(product.getId())))
+                    productService.findById(id).flatMap( product -> imageStorage.store(file.content(), file.filename())
+                            .flatMap(image -> productService.saveWithImage(product, image))))
+                    .doOnNext(imageProcessor::submit)
+                    .flatMap(product -> ServerResponse.created(URI.create("/api/v2/products".concat(product.getId())))
                             .contentType(MediaType.APPLICATION_JSON)
                             .body(fromValue(product)))
                             .switchIfEmpty(ServerResponse.notFound().build());
     }
 
+    public Mono<ServerResponse> image(ServerRequest req){
+        String id = req.pathVariable("id");
+        String variant = req.queryParam("variant").orElse("original");
+        return productService.findById(id)
+                .flatMap(product -> productImages.find(product, variant))
+                // the body goes through ResourceHttpMessageWriter, which answers Range requests and uses zero-copy transfer for files
+                .flatMap(image -> req.checkNotModified(image.lastModified(), image.etag())
+                        .switchIfEmpty(ServerResponse.ok()
+                                .contentType(image.contentType())
+                                .lastModified(image.lastModified())
+                                .eTag(image.etag())
+                                .cacheControl(CacheControl.maxAge(imageCacheMaxAge).cachePublic())
+                                .body(BodyInserters.fromResource(image.resource()))))
+                .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
     public Mono<ServerResponse> listAll(ServerRequest req){
+        ProductView view;
+        ProductFilter filter;
+        try {
+            view = ProductView.of(req.queryParam("view").orElse(null));
+            filter = ProductFilter.from(req.queryParams().toSingleValueMap());
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().body(fromValue(e.getMessage()));
+        }
+
+        List<MediaType> accept = req.headers().accept();
+        if(accept.stream().anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype)){
+            return ServerResponse.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body((message, context) -> streamWriter.writeNdjson(message, productService.streamAll(filter, view), view));
+        }
+        if(accept.stream().anyMatch(MediaType.TEXT_EVENT_STREAM::equalsTypeAndSubtype)){
+            return ServerResponse.ok()
+                    .contentType(MediaType.TEXT_EVENT_STREAM)
+                    .body((message, context) -> streamWriter.writeEvents(message, productService.streamAll(filter, view), view));
+        }
+
+        ServerResponse.BodyBuilder response = ServerResponse.ok().contentType(MediaType.APPLICATION_JSON);
+        if(view.isProjected()){
+            response.hint(Jackson2CodecSupport.JSON_VIEW_HINT, view.getJsonView());
+        }
+        // with the ETag set an If-None-Match that still matches gets a 304 without the body being subscribed
+        return productService.findVersion(filter)
+                .flatMap(version -> response.eTag(view.name().toLowerCase(Locale.ROOT).concat("-").concat(version))
+                        .body(productService.findAll(filter, view), Product.class));
+    }
+
+    public Mono<ServerResponse> listPage(ServerRequest req){
+        String cursor = req.queryParam("cursor").orElse(null);
+
+        return Mono.defer(() -> productService.findPage(cursor, ProductPage.parseSize(req.queryParam("size").orElse(null))))
+                .flatMap(page -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(fromValue(page)))
+                .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest().body(fromValue(String.valueOf(e.getMessage()))));
+    }
+
+    public Mono<ServerResponse> search(ServerRequest req){
+        String query = req.queryParam("q").orElse("");
+        if (query.isBlank()) {
+            return ServerResponse.badRequest().body(fromValue("The query parameter q is required"));
+        }
+
+        Integer limit;
+        try {
+            limit = req.queryParam("limit").map(Integer::valueOf).orElse(null);
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().body(fromValue("The limit must be a number"));
+        }
+
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(productService.search(query, limit), Product.class);
+    }
+
+    public Mono<ServerResponse> categorySummaries(ServerRequest req){
         return ServerResponse.ok()
                 .contentType(MediaType.APPLICATION_JSON)
-                .body(productService.findAll(), Product.class);
+                .body(categorySummaryService.findAll(), CategorySummary.class);
+    }
+
+    public Mono<ServerResponse> topByPrice(ServerRequest req){
+        Integer limit;
+        try {
+            limit = req.queryParam("limit").map(Integer::valueOf).orElse(null);
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().body(fromValue("The limit must be a number"));
+        }
+
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(productService.findTopByPrice(req.queryParam("categoryId").orElse(null), limit), Product.class);
+    }
+
+    public Mono<ServerResponse> replay(ServerRequest req){
+        Flux<Product> products;
+        try {
+            products = productService.replay(
+                    req.queryParam("interval").map(DurationStyle::detectAndParse).orElse(null),
+                    req.queryParam("batch").map(Integer::valueOf).orElse(null),
+                    req.queryParam("repeat").map(Integer::valueOf).orElse(null),
+                    req.queryParam("upperCase").map(Boolean::parseBoolean).orElse(false));
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().body(fromValue(String.valueOf(e.getMessage())));
+        }
+
+        String client = req.remoteAddress().map(address -> address.getAddress().getHostAddress()).orElse("unknown");
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(streamLimiter.limit(client, products), Product.class);
+    }
+
+    public Mono<ServerResponse> changes(ServerRequest req){
+        String resumeToken = req.headers().firstHeader("Last-Event-ID");
+        if (resumeToken == null) {
+            resumeToken = req.queryParam("resumeToken").orElse(null);
+        }
+
+        try {
+            return ServerResponse.ok()
+                    .contentType(MediaType.TEXT_EVENT_STREAM)
+                    .body(BodyInserters.fromServerSentEvents(changeFeed.events(resumeToken)));
+        } catch (IllegalStateException e) {
+            return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE).body(fromValue(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().body(fromValue(e.getMessage()));
+        }
     }
 
     public Mono<ServerResponse> detail(ServerRequest req) {
         String id = req.pathVariable("id");
         return productService.findById(id)
-                .flatMap(prod -> ServerResponse.ok()
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .body(fromValue(prod)))
-                        .switchIfEmpty(ServerResponse.notFound().build());
+                .flatMap(prod -> {
+                    ProductVersion version = ProductVersion.of(prod);
+                    return req.exchange().checkNotModified(version.getTag(), version.getLastModified())
+                            ? ServerResponse.status(HttpStatus.NOT_MODIFIED).headers(version::addTo).build()
+                            : ServerResponse.ok()
+                                    .contentType(MediaType.APPLICATION_JSON)
+                                    .headers(version::addTo)
+                                    .body(fromValue(prod));
+                })
+                .switchIfEmpty(ServerResponse.notFound().build());
     }
 
     public Mono<ServerResponse> create(ServerRequest req) {
-        Mono<Product> product = req.bodyToMono(Product.class);
-
-        return product.flatMap(product1 -> {
-                    Errors errors = new BeanPropertyBindingResult(product1, Product.class.getName());
-                    validator.validate(product1, errors);
+        Mono<Product> product = req.bodyToMono(Product.class).map(productService::withoutImages);
 
-                    if(errors.hasErrors()){
-                        return Flux.fromIterable(errors.getFieldErrors())
-                                .map(fieldError -> "The Field ".concat(fieldError.getField()).concat(" ").concat(fieldError.getDefaultMessage()))
-                                .collectList()
-                                .flatMap(list -> ServerResponse.badRequest().body(fromValue(list)));
+        return product.flatMap(product1 -> validateAndResolve(product1).flatMap(errors -> {
+                    if(!errors.isEmpty()){
+                        return ServerResponse.badRequest().body(fromValue(errors));
                     }else {
                         return productService.save(product1).flatMap(prod -> ServerResponse.created(URI.create("/api/v2/products".concat(prod.getId())))
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .body(fromValue(prod)));
                     }
+                }));
+
+    }
+
+    public Mono<ServerResponse> bulk(ServerRequest req) {
+        Flux<BulkItemResult> results = req.bodyToFlux(Product.class)
+                .map(productService::withoutImages)
+                .index()
+                .buffer(bulkChunkSize)
+                .concatMap(chunk -> {
+                    Map<Long, List<String>> errorsByIndex = new HashMap<>();
+                    List<String> categoryIds = new ArrayList<>();
+                    chunk.forEach(item -> {
+                        List<String> errors = validate(item.getT2());
+                        errorsByIndex.put(item.getT1(), errors);
+                        if(errors.isEmpty()){
+                            categoryIds.add(item.getT2().getCategory().getId());
+                        }
+                    });
+
+                    // one category lookup for the whole chunk, answered from the cache
+                    return categoryService.findAllById(categoryIds).flatMapMany(categories -> {
+                        List<BulkItemResult> invalid = new ArrayList<>();
+                        List<Product> valid = new ArrayList<>();
+                        List<Long> validIndexes = new ArrayList<>();
+
+                        chunk.forEach(item -> {
+                            List<String> errors = errorsByIndex.get(item.getT1());
+                            Category category = errors.isEmpty() ? categories.get(item.getT2().getCategory().getId()) : null;
+                            if(errors.isEmpty() && category == null){
+                                errors.add(ProductService.UNKNOWN_CATEGORY);
+                            }
+
+                            if(!errors.isEmpty()){
+                                invalid.add(BulkItemResult.failed(item.getT1(), item.getT2().getId(), errors));
+                            }else {
+                                item.getT2().setCategory(category);
+                                valid.add(item.getT2());
+                                validIndexes.add(item.getT1());
+                            }
+                        });
+
+                        return Flux.fromIterable(invalid)
+                                .concatWith(productService.saveAll(valid)
+                                        .doOnNext(result -> result.setIndex(validIndexes.get((int) result.getIndex()))));
+                    });
                 });
 
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(results, BulkItemResult.class);
     }
 
     public Mono<ServerResponse> update(ServerRequest req){
         String id = req.pathVariable("id");
-        Mono<Product> product = req.bodyToMono(Product.class);
-        Mono<Product> productDB = productService.findById(id);
-
-        return productDB.zipWith(product, (db, reqProd) -> {
-            db.setName(reqProd.getName());
-            db.setPrice(reqProd.getPrice());
-            return db;
-        }).flatMap(p -> ServerResponse.created(URI.create("/api/v2/products".concat(p.getId())))
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(productService.save(p), Product.class))
-                .switchIfEmpty(ServerResponse.notFound().build());
+
+        return req.bodyToMono(Product.class)
+                .flatMap(reqProd -> {
+                    // only the fields sent are changed, the others keep their stored value
+                    Map<String, Object> fields = new HashMap<>();
+                    if(reqProd.getName() != null){
+                        fields.put("name", reqProd.getName());
+                    }
+                    if(reqProd.getPrice() != null){
+                        fields.put("price", reqProd.getPrice());
+                    }
+                    if(reqProd.getCategory() == null){
+                        return productService.patch(id, fields, reqProd.getVersion());
+                    }
+                    return productService.withStoredCategory(reqProd)
+                            .flatMap(prod -> {
+                                fields.put("category", prod.getCategory());
+                                return productService.patch(id, fields, reqProd.getVersion());
+                            });
+                })
+                .flatMap(p -> ServerResponse.created(URI.create("/api/v2/products".concat(p.getId())))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(fromValue(p)))
+                .switchIfEmpty(ServerResponse.notFound().build())
+                .onErrorResume(OptimisticLockingFailureException.class, e -> ServerResponse.status(HttpStatus.CONFLICT).build())
+                .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest().body(fromValue(List.of(e.getMessage()))));
     }
 
     public Mono<ServerResponse> delete(ServerRequest req) {
         String id = req.pathVariable("id");
-        Mono<Product> productDB = productService.findById(id);
 
-        return productDB.flatMap( prod -> productService.delete(prod).then(ServerResponse.noContent().build()))
-                .switchIfEmpty(ServerResponse.notFound().build());
+        return productService.deleteById(id)
+                .flatMap(deleted -> deleted ? ServerResponse.noContent().build() : ServerResponse.notFound().build());
     }
 }
@@ -0,0 +1,93 @@
+package com.bolsadeideas.springboot.webflux.app.handler;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductView;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Writes products as NDJSON or Server-Sent-Events, flushing the channel once per batch of rows
+ * (or when the flush interval elapses) instead of once per row or once at the end.
+ * Demand coming from the channel is propagated to the source, so memory stays bounded.
+ */
+@Component
+public class ProductStreamWriter {
+
+    private static final byte[] NEW_LINE = "\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] EVENT_END = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${config.stream.flush-size:64}")
+    private int flushSize;
+
+    @Value("${config.stream.flush-interval:200ms}")
+    private Duration flushInterval;
+
+    public Mono<Void> writeNdjson(ReactiveHttpOutputMessage message, Flux<Product> products, ProductView view) {
+        ObjectWriter writer = writer(view);
+        message.getHeaders().setContentType(MediaType.APPLICATION_NDJSON);
+        return write(message, products, product -> concat(toJson(writer, product), NEW_LINE));
+    }
+
+    public Mono<Void> writeEvents(ReactiveHttpOutputMessage message, Flux<Product> products, ProductView view) {
+        ObjectWriter writer = writer(view);
+        message.getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+        return write(message, products, product -> concat(
+                "id:".concat(product.getId()).concat("\nevent:product\ndata:").getBytes(StandardCharsets.UTF_8),
+                toJson(writer, product),
+                EVENT_END));
+    }
+
+    private ObjectWriter writer(ProductView view) {
+        return view.isProjected() ? objectMapper.writerWithView(view.getJsonView()) : objectMapper.writer();
+    }
+
+    private Mono<Void> write(ReactiveHttpOutputMessage message, Flux<Product> products, Function<Product, byte[]> encoder) {
+        DataBufferFactory bufferFactory = message.bufferFactory();
+        return message.writeAndFlushWith(products
+                .map(product -> bufferFactory.wrap(encoder.apply(product)))
+                .windowTimeout(flushSize, flushInterval, true)
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release));
+    }
+
+    private static byte[] concat(byte[]... chunks) {
+        int length = 0;
+        for (byte[] chunk : chunks) {
+            length += chunk.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, result, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return result;
+    }
+
+    private static byte[] toJson(ObjectWriter writer, Product product) {
+        try {
+            return writer.writeValueAsBytes(product);
+        } catch (JsonProcessingException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+}
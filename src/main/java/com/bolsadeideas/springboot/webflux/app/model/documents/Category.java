@@ -2,6 +2,7 @@ package com.bolsadeideas.springboot.webflux.app.model.documents;
 
 import jakarta.validation.constraints.NotEmpty;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "categories")
@@ -10,6 +11,7 @@ public class Category {
     @Id
     @NotEmpty
     private String id;
+    @Indexed(unique = true)
     private String name;
 
     public Category() {
@@ -0,0 +1,104 @@
+package com.bolsadeideas.springboot.webflux.app.model.documents;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Product count and price statistics of one category, keyed by the category id.
+ */
+@Document(collection = "category_summaries")
+public class CategorySummary {
+
+    @Id
+    private String id;
+
+    private String name;
+
+    private long count;
+
+    private Double minPrice;
+
+    private Double maxPrice;
+
+    private Double totalPrice;
+
+    // bumped by every change, so that a recomputed value only lands on the state it was computed from
+    private long revision;
+
+    private Date updatedAt;
+
+    public CategorySummary() {}
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public Double getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(Double minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public Double getMaxPrice() {
+        return maxPrice;
+    }
+
+    public void setMaxPrice(Double maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    /**
+     * Derived from the total and the count, which are the values kept up to date by every write.
+     */
+    public Double getAvgPrice() {
+        return totalPrice == null || count == 0 ? null : totalPrice / count;
+    }
+
+    public Double getTotalPrice() {
+        return totalPrice;
+    }
+
+    public void setTotalPrice(Double totalPrice) {
+        this.totalPrice = totalPrice;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,45 @@
+package com.bolsadeideas.springboot.webflux.app.model.documents;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Document(collection = "image_blobs")
+@CompoundIndex(name = "refs_updatedAt", def = "{ 'refs': 1, 'updatedAt': 1 }")
+public class ImageBlob {
+
+    @Id
+    private String id;
+
+    private long refs;
+
+    private Date updatedAt;
+
+    public ImageBlob() {}
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public long getRefs() {
+        return refs;
+    }
+
+    public void setRefs(long refs) {
+        this.refs = refs;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
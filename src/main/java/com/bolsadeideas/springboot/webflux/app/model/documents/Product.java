@@ -1,24 +1,43 @@
 package com.bolsadeideas.springboot.webflux.app.model.documents;
 
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductView;
+import com.fasterxml.jackson.annotation.JsonView;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.format.annotation.DateTimeFormat;
 
 import java.util.Date;
 
 @Document(collection = "products")
+@CompoundIndexes({
+        @CompoundIndex(name = "createdAt_id", def = "{ 'createdAt': 1, '_id': 1 }"),
+        @CompoundIndex(name = "category_price", def = "{ 'category._id': 1, 'price': 1 }"),
+        @CompoundIndex(name = "category_createdAt", def = "{ 'category._id': 1, 'createdAt': 1 }"),
+        @CompoundIndex(name = "price_id", def = "{ 'price': 1, '_id': 1 }")
+})
 public class Product {
 
+    // keyset paging compares ids as ObjectIds, so a client chosen id has to be one
     @Id
+    @Pattern(regexp = "[0-9a-fA-F]{24}", message = "must be an ObjectId")
+    @JsonView(ProductView.Summary.class)
     private String id;
 
     @NotBlank
+    @Indexed
+    @JsonView(ProductView.Summary.class)
     private String name;
 
     @NotNull
+    @JsonView(ProductView.Summary.class)
     private Double price;
 
     @DateTimeFormat(pattern = "yyyy-MM-dd")
@@ -30,6 +49,17 @@ public class Product {
 
     private String image;
 
+    @JsonView(ProductView.Card.class)
+    private String thumbnail;
+
+    private String mediumImage;
+
+    @Version
+    private Long version;
+
+    // set by the service on every write, it backs Last-Modified and If-Modified-Since
+    private Date lastModified;
+
     public Product() {}
 
     public Product(String name, Double price) {
@@ -42,6 +72,17 @@ public class Product {
         this.category = category;
     }
 
+    public Product(Product product) {
+        this(product.name, product.price, product.category);
+        this.id = product.id;
+        this.createdAt = product.createdAt;
+        this.image = product.image;
+        this.thumbnail = product.thumbnail;
+        this.mediumImage = product.mediumImage;
+        this.version = product.version;
+        this.lastModified = product.lastModified;
+    }
+
     public String getId() {
         return id;
     }
@@ -90,6 +131,38 @@ public class Product {
         this.image = image;
     }
 
+    public String getThumbnail() {
+        return thumbnail;
+    }
+
+    public void setThumbnail(String thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+
+    public String getMediumImage() {
+        return mediumImage;
+    }
+
+    public void setMediumImage(String mediumImage) {
+        this.mediumImage = mediumImage;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Date lastModified) {
+        this.lastModified = lastModified;
+    }
+
     @Override
     public String toString() {
         return "product [ name = " + this.name + ", price = $" + this.price + ", created at = " + this.createdAt + " ]";
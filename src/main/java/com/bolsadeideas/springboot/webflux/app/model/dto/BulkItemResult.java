@@ -0,0 +1,63 @@
+package com.bolsadeideas.springboot.webflux.app.model.dto;
+
+import java.util.List;
+
+public class BulkItemResult {
+
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String FAILED = "failed";
+
+    private long index;
+
+    private String id;
+
+    private String status;
+
+    private List<String> errors;
+
+    public BulkItemResult() {}
+
+    public BulkItemResult(long index, String id, String status, List<String> errors) {
+        this.index = index;
+        this.id = id;
+        this.status = status;
+        this.errors = errors;
+    }
+
+    public static BulkItemResult failed(long index, String id, List<String> errors) {
+        return new BulkItemResult(index, id, FAILED, errors);
+    }
+
+    public long getIndex() {
+        return index;
+    }
+
+    public void setIndex(long index) {
+        this.index = index;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<String> errors) {
+        this.errors = errors;
+    }
+}
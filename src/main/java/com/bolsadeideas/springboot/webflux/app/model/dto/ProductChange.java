@@ -0,0 +1,62 @@
+package com.bolsadeideas.springboot.webflux.app.model.dto;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * One change of the products collection. The product is null for deletes, and the resume token lets
+ * a client reconnect right after this change.
+ */
+public class ProductChange {
+
+    private final String operation;
+
+    private final String id;
+
+    private final Product product;
+
+    private final String resumeToken;
+
+    public ProductChange(String operation, String id, Product product, String resumeToken) {
+        this.operation = operation;
+        this.id = id;
+        this.product = product;
+        this.resumeToken = resumeToken;
+    }
+
+    public static String encodeToken(BsonValue token) {
+        if (token == null) {
+            return null;
+        }
+        String json = token.asDocument().toJson();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static BsonDocument decodeToken(String token) {
+        try {
+            return BsonDocument.parse(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("The resume token ".concat(String.valueOf(token)).concat(" is not valid"), e);
+        }
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public String getResumeToken() {
+        return resumeToken;
+    }
+}
@@ -0,0 +1,52 @@
+package com.bolsadeideas.springboot.webflux.app.model.dto;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import org.bson.types.ObjectId;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Keyset position inside the products collection, ordered by {@code createdAt} and then {@code _id}.
+ * It travels to the clients as an opaque url-safe token.
+ */
+public class ProductCursor {
+
+    private static final String SEPARATOR = ":";
+
+    private final Date createdAt;
+    private final ObjectId id;
+
+    public ProductCursor(Date createdAt, ObjectId id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    public static ProductCursor of(Product product) {
+        return new ProductCursor(product.getCreatedAt(), new ObjectId(product.getId()));
+    }
+
+    public static ProductCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR, 2);
+            return new ProductCursor(new Date(Long.parseLong(parts[0])), new ObjectId(parts[1]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("The cursor ".concat(String.valueOf(token)).concat(" is not valid"), e);
+        }
+    }
+
+    public String encode() {
+        String raw = String.valueOf(createdAt.getTime()).concat(SEPARATOR).concat(id.toHexString());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+}
@@ -0,0 +1,138 @@
+package com.bolsadeideas.springboot.webflux.app.model.dto;
+
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Server-side filters for product listings, parsed from query parameters.
+ * Prices are an inclusive range and dates a half-open one ({@code createdFrom <= createdAt < createdTo}).
+ */
+public class ProductFilter {
+
+    public static final ProductFilter NONE = new ProductFilter(null, null, null, null, null, Sort.unsorted());
+
+    private static final Set<String> SORTABLE_FIELDS = Set.of("name", "price", "createdAt");
+
+    private final String categoryId;
+
+    private final Double minPrice;
+
+    private final Double maxPrice;
+
+    private final Date createdFrom;
+
+    private final Date createdTo;
+
+    private final Sort sort;
+
+    public ProductFilter(String categoryId, Double minPrice, Double maxPrice, Date createdFrom, Date createdTo, Sort sort) {
+        this.categoryId = categoryId;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.createdFrom = createdFrom;
+        this.createdTo = createdTo;
+        this.sort = sort;
+    }
+
+    /**
+     * Reads {@code categoryId}, {@code minPrice}, {@code maxPrice}, {@code createdFrom}, {@code createdTo}
+     * and {@code sort} (comma separated fields, {@code -} prefix for descending). Other keys are ignored.
+     */
+    public static ProductFilter from(Map<String, String> params) {
+        Double minPrice = parsePrice("minPrice", params.get("minPrice"));
+        Double maxPrice = parsePrice("maxPrice", params.get("maxPrice"));
+        if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+            throw new IllegalArgumentException("The minPrice can not be greater than the maxPrice");
+        }
+        Date createdFrom = parseDate("createdFrom", params.get("createdFrom"));
+        Date createdTo = parseDate("createdTo", params.get("createdTo"));
+        if (createdFrom != null && createdTo != null && createdFrom.after(createdTo)) {
+            throw new IllegalArgumentException("The createdFrom can not be after the createdTo");
+        }
+        String categoryId = params.get("categoryId");
+
+        return new ProductFilter(categoryId == null || categoryId.isBlank() ? null : categoryId,
+                minPrice, maxPrice, createdFrom, createdTo, parseSort(params.get("sort")));
+    }
+
+    private static Double parsePrice(String param, String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The ".concat(param).concat(" must be a number"), e);
+        }
+    }
+
+    private static Date parseDate(String param, String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return value.length() == 10
+                    ? Date.from(LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant())
+                    : Date.from(Instant.parse(value));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("The ".concat(param).concat(" must be a yyyy-MM-dd date or an ISO instant"), e);
+        }
+    }
+
+    private static Sort parseSort(String value) {
+        if (value == null || value.isBlank()) {
+            return Sort.unsorted();
+        }
+        List<Sort.Order> orders = new ArrayList<>();
+        for (String token : value.split(",")) {
+            String field = token.trim();
+            boolean descending = field.startsWith("-");
+            if (descending) {
+                field = field.substring(1);
+            }
+            if (!SORTABLE_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("The products can not be sorted by ".concat(field));
+            }
+            orders.add(descending ? Sort.Order.desc(field) : Sort.Order.asc(field));
+        }
+        return Sort.by(orders);
+    }
+
+    public String getCategoryId() {
+        return categoryId;
+    }
+
+    public Double getMinPrice() {
+        return minPrice;
+    }
+
+    public Double getMaxPrice() {
+        return maxPrice;
+    }
+
+    public Date getCreatedFrom() {
+        return createdFrom;
+    }
+
+    public Date getCreatedTo() {
+        return createdTo;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public boolean isEmpty() {
+        return categoryId == null && minPrice == null && maxPrice == null
+                && createdFrom == null && createdTo == null && sort.isUnsorted();
+    }
+}
@@ -0,0 +1,59 @@
+package com.bolsadeideas.springboot.webflux.app.model.dto;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+
+import java.util.List;
+
+public class ProductPage {
+
+    private List<Product> content;
+
+    private int size;
+
+    private String next;
+
+    public ProductPage() {}
+
+    /**
+     * Reads the size parameter of a page request, null when none was sent.
+     *
+     * @throws IllegalArgumentException when it is not a number
+     */
+    public static Integer parseSize(String size) {
+        try {
+            return size == null ? null : Integer.valueOf(size);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The size must be a number");
+        }
+    }
+
+    public ProductPage(List<Product> content, String next) {
+        this.content = content;
+        this.size = content.size();
+        this.next = next;
+    }
+
+    public List<Product> getContent() {
+        return content;
+    }
+
+    public void setContent(List<Product> content) {
+        this.content = content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
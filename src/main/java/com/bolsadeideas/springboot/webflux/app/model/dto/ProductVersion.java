@@ -0,0 +1,61 @@
+package com.bolsadeideas.springboot.webflux.app.model.dto;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * What tells whether a product changed, its version and last modification.
+ */
+public class ProductVersion {
+
+    private final String id;
+    private final Long version;
+    private final Date lastModified;
+
+    public ProductVersion(String id, Long version, Date lastModified) {
+        this.id = id;
+        this.version = version;
+        this.lastModified = lastModified;
+    }
+
+    public static ProductVersion of(Product product) {
+        return new ProductVersion(product.getId(), product.getVersion(), product.getLastModified());
+    }
+
+    /**
+     * The entity tag of the product, null for a product written before it had a version.
+     */
+    public String getTag() {
+        return version == null ? null : id.concat("-").concat(String.valueOf(version));
+    }
+
+    /**
+     * The last modification, {@link Instant#MIN} when unknown so that it never matches {@code If-Modified-Since}.
+     */
+    public Instant getLastModified() {
+        return lastModified == null ? Instant.MIN : lastModified.toInstant();
+    }
+
+    /**
+     * Sets the ETag and Last-Modified headers that are known.
+     */
+    public void addTo(HttpHeaders headers) {
+        if (version != null) {
+            headers.setETag("\"".concat(getTag()).concat("\""));
+        }
+        if (lastModified != null) {
+            headers.setLastModified(lastModified.toInstant());
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,50 @@
+package com.bolsadeideas.springboot.webflux.app.model.dto;
+
+import java.util.Locale;
+
+/**
+ * Named projections of a product. Each view lists the fields read from Mongo
+ * and is also the Jackson {@code @JsonView} used to serialize them.
+ */
+public enum ProductView {
+
+    FULL(null),
+    SUMMARY(Summary.class, "name", "price"),
+    CARD(Card.class, "name", "price", "thumbnail");
+
+    public interface Summary {}
+
+    public interface Card extends Summary {}
+
+    private final Class<?> jsonView;
+
+    private final String[] fields;
+
+    ProductView(Class<?> jsonView, String... fields) {
+        this.jsonView = jsonView;
+        this.fields = fields;
+    }
+
+    public static ProductView of(String name) {
+        if (name == null || name.isBlank()) {
+            return FULL;
+        }
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("The view ".concat(name).concat(" does not exist"), e);
+        }
+    }
+
+    public Class<?> getJsonView() {
+        return jsonView;
+    }
+
+    public String[] getFields() {
+        return fields;
+    }
+
+    public boolean isProjected() {
+        return jsonView != null;
+    }
+}
@@ -1,12 +1,23 @@
 package com.bolsadeideas.springboot.webflux.app.model.repository;
 
 import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Date;
+
 @Repository
 public interface ProductRepository extends ReactiveMongoRepository<Product, String> {
 
     public Mono<Product> findByName(String name);
+
+    public Flux<Product> findAllBy(Pageable pageable);
+
+    @Query("{ '$or': [ { 'createdAt': { '$gt': ?0 } }, { 'createdAt': ?0, '_id': { '$gt': ?1 } } ] }")
+    public Flux<Product> findAllAfter(Date createdAt, ObjectId id, Pageable pageable);
 }
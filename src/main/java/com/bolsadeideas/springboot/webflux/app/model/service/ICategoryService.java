@@ -4,12 +4,20 @@ import com.bolsadeideas.springboot.webflux.app.model.documents.Category;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+import java.util.Map;
+
 public interface ICategoryService {
 
     public Flux<Category> findAll();
 
     public Mono<Category> findById(String id);
 
+    /**
+     * Looks up a batch of categories at once, the ids that match no category are left out of the map.
+     */
+    public Mono<Map<String, Category>> findAllById(Collection<String> ids);
+
     public Mono<Category> save(Category category);
 
     public Mono<Category> findByName(String name);
@@ -0,0 +1,32 @@
+package com.bolsadeideas.springboot.webflux.app.model.service;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.CategorySummary;
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+public interface ICategorySummaryService {
+
+    /**
+     * One product write as the summaries see it: the product before it, null for a create, and after it, null for
+     * a delete.
+     */
+    public record Change(Product before, Product after) {}
+
+    /**
+     * Reads the maintained summaries when they are enabled, otherwise aggregates the products on the fly.
+     */
+    public Flux<CategorySummary> findAll();
+
+    /**
+     * Moves the summaries of the categories the writes touched by what the writes added and removed. Does nothing
+     * while the summaries are disabled.
+     */
+    public Mono<Void> record(Collection<Change> changes);
+
+    public Mono<Void> record(Product before, Product after);
+
+    public Mono<Void> refreshAll();
+}
@@ -1,25 +1,101 @@
 package com.bolsadeideas.springboot.webflux.app.model.service;
 
 import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.dto.BulkItemResult;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductFilter;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductPage;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductView;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
 public interface IProductService {
 
+    public static final String MISSING_CATEGORY = "The Field category.id must not be empty";
+
+    public static final String UNKNOWN_CATEGORY = "The Field category.id does not exist";
+
     public Flux<Product> findAll();
 
-    public Flux<Product> findAllWthNameInUpperCase();
+    /**
+     * Applies the filter in Mongo and reads only the fields of the view, the remaining fields are left null.
+     */
+    public Flux<Product> findAll(ProductFilter filter, ProductView view);
+
+    public Flux<Product> streamAll(ProductFilter filter, ProductView view);
 
-    public Flux<Product> findAllWthDelay();
+    /**
+     * The count, latest modification and sum of the versions of the products matching the filter, read with a
+     * single grouping aggregation. It changes whenever one of them is written, added or removed.
+     */
+    public Mono<String> findVersion(ProductFilter filter);
 
-    public Flux<Product> findAllRepeat();
+    public Mono<ProductPage> findPage(String cursor, Integer size);
+
+    public Flux<Product> findAllWthNameInUpperCase();
+
+    /**
+     * Replays a cached snapshot of the catalog, {@code batch} products per {@code interval} tick and
+     * {@code repeat} times over. Ticks are dropped while the subscriber is not asking for more.
+     */
+    public Flux<Product> replay(Duration interval, Integer batch, Integer repeat, boolean upperCase);
 
     public Mono<Product> findById(String id);
 
     public Mono<Product> save(Product product);
 
+    /**
+     * Clears the image fields of a product sent by a client, only the upload endpoints set them.
+     */
+    public Product withoutImages(Product product);
+
+    /**
+     * Swaps the category sent by a client for the stored one, so the embedded copy can be trusted. Fails with an
+     * {@link IllegalArgumentException} when the category id is missing or unknown.
+     */
+    public Mono<Product> withStoredCategory(Product product);
+
+    /**
+     * Saves the product pointing at a stored image, moving the image reference from its previous image.
+     */
+    public Mono<Product> saveWithImage(Product product, String image);
+
+    /**
+     * Writes the products with one unordered bulk operation: products without id are inserted,
+     * the others are upserted by id. Emits one result per product, indexed by its position in the list.
+     */
+    public Flux<BulkItemResult> saveAll(List<Product> products);
+
+    /**
+     * Sets the given fields in a single atomic round trip. When {@code version} is not null the
+     * update only applies to that version and fails with an
+     * {@link org.springframework.dao.OptimisticLockingFailureException} if someone else changed the product first.
+     * Emits the updated product, or completes empty when there is no product with that id.
+     */
+    public Mono<Product> patch(String id, Map<String, Object> fields, Long version);
+
+    /**
+     * Records the resized variants of {@code image}, unless the product has been given another image meanwhile.
+     */
+    public Mono<Product> setImageVariants(String id, String image, String thumbnail, String mediumImage);
+
     public Mono<Void> delete(Product product);
 
+    public Mono<Boolean> deleteById(String id);
+
     public Mono<Product> findByName(String name);
 
+    /**
+     * Prefix search over product and category names, answered from the in-memory index.
+     */
+    public Flux<Product> search(String query, Integer limit);
+
+    /**
+     * The most expensive products, optionally of one category.
+     */
+    public Flux<Product> findTopByPrice(String categoryId, Integer limit);
+
 }
@@ -0,0 +1,168 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.batch;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Opt-in batching of {@code ProductService.save}: saves arriving within the window are written with one unordered
+ * bulk operation, and saves of the same product in that window collapse into the last one. Each save keeps the
+ * semantics of a versioned repository save: a product without version is inserted, the others replace the stored
+ * product only if it is still at their version, failing with an {@link OptimisticLockingFailureException} otherwise.
+ */
+@Component
+public class ProductSaveBatcher {
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${config.save-batching.enabled:false}")
+    private boolean enabled;
+
+    @Value("${config.save-batching.max-size:500}")
+    private int maxSize;
+
+    @Value("${config.save-batching.window:5ms}")
+    private Duration window;
+
+    @Value("${config.save-batching.capacity:10000}")
+    private int capacity;
+
+    @Value("${config.save-batching.max-waiting:1000}")
+    private int maxWaiting;
+
+    private WriteCoalescer<String, Product> coalescer;
+
+    private DistributionSummary batchSizes;
+
+    private record Outcome(BulkWriteResult result, Map<String, Throwable> failures) {}
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        Counter coalesced = Counter.builder("product.save.coalesced").register(meterRegistry);
+        coalescer = new WriteCoalescer<>(Product::getId, this::write, maxSize, window, capacity, maxWaiting, coalesced);
+        batchSizes = DistributionSummary.builder("product.save.batch.size").register(meterRegistry);
+        Gauge.builder("product.save.pending", coalescer, WriteCoalescer::size).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Completes once the batch holding the save is acknowledged, with the product written for that id.
+     */
+    public Mono<Product> save(Product product) {
+        return Mono.defer(() -> {
+            if (product.getId() == null) {
+                product.setId(ObjectId.get().toHexString());
+            }
+            // a caller whose save was replaced by a later one gets its own copy of the winner
+            return coalescer.submit(product).map(saved -> saved == product ? saved : new Product(saved));
+        });
+    }
+
+    private Mono<Map<String, Throwable>> write(Map<String, Product> batch) {
+        ReactiveBulkOperations bulk = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        List<String> ids = new ArrayList<>(batch.size());
+        Map<String, Long> previousVersions = new HashMap<>();
+        batch.forEach((id, product) -> {
+            ids.add(id);
+            Long version = product.getVersion();
+            previousVersions.put(id, version);
+            if (version == null) {
+                product.setVersion(0L);
+                bulk.insert(product);
+            } else {
+                product.setVersion(version + 1);
+                bulk.replaceOne(Query.query(Criteria.where("id").is(id).and("version").is(version)), product);
+            }
+        });
+        batchSizes.record(batch.size());
+
+        return bulk.execute()
+                .map(result -> new Outcome(result, new HashMap<>()))
+                .onErrorResume(e -> bulkError(e) != null, e -> {
+                    MongoBulkWriteException error = bulkError(e);
+                    Map<String, Throwable> failures = error.getWriteErrors().stream()
+                            .collect(Collectors.toMap(writeError -> ids.get(writeError.getIndex()), ProductSaveBatcher::toException));
+                    return Mono.just(new Outcome(error.getWriteResult(), failures));
+                })
+                .flatMap(outcome -> findConflicts(previousVersions, outcome))
+                .doOnNext(failures -> failures.keySet().forEach(id -> batch.get(id).setVersion(previousVersions.get(id))))
+                .doOnError(e -> batch.forEach((id, product) -> product.setVersion(previousVersions.get(id))));
+    }
+
+    // a replace matching nothing means the product moved past its version or went away, which only a read can tell apart
+    private Mono<Map<String, Throwable>> findConflicts(Map<String, Long> previousVersions, Outcome outcome) {
+        List<String> replaced = previousVersions.entrySet().stream()
+                .filter(entry -> entry.getValue() != null && !outcome.failures().containsKey(entry.getKey()))
+                .map(Map.Entry::getKey)
+                .toList();
+        if (outcome.result() == null || outcome.result().getMatchedCount() >= replaced.size()) {
+            return Mono.just(outcome.failures());
+        }
+
+        Query query = Query.query(Criteria.where("id").in(replaced));
+        query.fields().include("version");
+        return reactiveMongoTemplate.find(query, Product.class)
+                .collectMap(Product::getId, product -> product.getVersion() == null ? -1L : product.getVersion())
+                .map(stored -> {
+                    Map<String, Throwable> failures = new HashMap<>(outcome.failures());
+                    for (String id : replaced) {
+                        Long written = previousVersions.get(id) + 1;
+                        if (!written.equals(stored.get(id))) {
+                            failures.put(id, new OptimisticLockingFailureException("The product ".concat(id)
+                                    .concat(" is no longer at version ").concat(String.valueOf(previousVersions.get(id)))));
+                        }
+                    }
+                    return failures;
+                });
+    }
+
+    private static MongoBulkWriteException bulkError(Throwable error) {
+        Throwable cause = error;
+        while (cause != null && !(cause instanceof MongoBulkWriteException)) {
+            cause = cause.getCause();
+        }
+        return (MongoBulkWriteException) cause;
+    }
+
+    private static Throwable toException(BulkWriteError error) {
+        return error.getCode() == 11000
+                ? new DuplicateKeyException(error.getMessage())
+                : new DataIntegrityViolationException(error.getMessage());
+    }
+}
@@ -0,0 +1,205 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.batch;
+
+import io.micrometer.core.instrument.Counter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Gathers writes into batches: a batch is handed to the writer once it holds {@code maxBatchSize} keys or once
+ * {@code window} has passed since its first write, whichever comes first. A key written again before its batch
+ * leaves keeps only the last value, and every caller of that key completes with it when the batch is acknowledged.
+ * One batch is written at a time, so writes of a key reach the writer in order. When {@code capacity} keys are
+ * buffered or being written, writes of new keys wait for room instead of growing the buffer, and once
+ * {@code maxWaiting} of them wait the next ones fail at once with a {@link WriteRejectedException}.
+ */
+public class WriteCoalescer<K, V> {
+
+    /**
+     * Writes a batch and emits the failure of every key that could not be written, the others succeeded.
+     */
+    public interface BatchWriter<K, V> {
+        Mono<Map<K, Throwable>> write(Map<K, V> batch);
+    }
+
+    private static final class Slot<V> {
+
+        private V value;
+
+        private final List<MonoSink<V>> callers = new ArrayList<>(1);
+    }
+
+    // not a record, the set of waiters goes by identity rather than by the value
+    private static final class Waiter<V> {
+
+        private final V value;
+
+        private final MonoSink<V> sink;
+
+        private Waiter(V value, MonoSink<V> sink) {
+            this.value = value;
+            this.sink = sink;
+        }
+    }
+
+    private final Function<V, K> keyOf;
+
+    private final BatchWriter<K, V> writer;
+
+    private final int maxBatchSize;
+
+    private final Duration window;
+
+    private final int capacity;
+
+    private final int maxWaiting;
+
+    private final Counter coalesced;
+
+    private Map<K, Slot<V>> open = new LinkedHashMap<>();
+
+    // in arrival order
+    private final Set<Waiter<V>> waiting = new LinkedHashSet<>();
+
+    private int writing;
+
+    private boolean flushing;
+
+    private boolean windowClosed;
+
+    private Disposable timer;
+
+    public WriteCoalescer(Function<V, K> keyOf, BatchWriter<K, V> writer, int maxBatchSize, Duration window,
+                          int capacity, int maxWaiting, Counter coalesced) {
+        if (capacity < maxBatchSize) {
+            throw new IllegalArgumentException("The capacity can not be lower than the batch size");
+        }
+        this.keyOf = keyOf;
+        this.writer = writer;
+        this.maxBatchSize = maxBatchSize;
+        this.window = window;
+        this.capacity = capacity;
+        this.maxWaiting = maxWaiting;
+        this.coalesced = coalesced;
+    }
+
+    public Mono<V> submit(V value) {
+        return Mono.create(sink -> {
+            Waiter<V> waiter = new Waiter<>(value, sink);
+            // a caller that goes away while waiting for room gives its place up
+            sink.onCancel(() -> giveUp(waiter));
+            offer(waiter);
+        });
+    }
+
+    /**
+     * The keys buffered or being written.
+     */
+    public synchronized int size() {
+        return open.size() + writing;
+    }
+
+    private void offer(Waiter<V> waiter) {
+        boolean full = false;
+        boolean rejected = false;
+        synchronized (this) {
+            K key = keyOf.apply(waiter.value);
+            Slot<V> slot = open.get(key);
+            if (slot != null) {
+                coalesced.increment();
+            } else if (open.size() + writing < capacity) {
+                slot = new Slot<>();
+                open.put(key, slot);
+                if (open.size() == 1) {
+                    timer = Schedulers.parallel().schedule(this::closeWindow, window.toNanos(), TimeUnit.NANOSECONDS);
+                }
+            } else if (waiting.size() < maxWaiting) {
+                waiting.add(waiter);
+            } else {
+                rejected = true;
+            }
+            if (slot != null) {
+                slot.value = waiter.value;
+                slot.callers.add(waiter.sink);
+                full = open.size() >= maxBatchSize;
+            }
+        }
+        if (rejected) {
+            waiter.sink.error(new WriteRejectedException("The write buffer is full and "
+                    .concat(String.valueOf(maxWaiting)).concat(" writes already wait for room")));
+        } else if (full) {
+            flush();
+        }
+    }
+
+    private synchronized void giveUp(Waiter<V> waiter) {
+        waiting.remove(waiter);
+    }
+
+    private void closeWindow() {
+        synchronized (this) {
+            windowClosed = true;
+        }
+        flush();
+    }
+
+    private void flush() {
+        Map<K, Slot<V>> batch;
+        synchronized (this) {
+            // a batch that is due while another is written leaves as soon as that one is acknowledged
+            if (flushing || open.isEmpty() || (!windowClosed && open.size() < maxBatchSize)) {
+                return;
+            }
+            batch = open;
+            open = new LinkedHashMap<>();
+            writing = batch.size();
+            flushing = true;
+            windowClosed = false;
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+        }
+
+        Map<K, V> values = new LinkedHashMap<>();
+        batch.forEach((key, slot) -> values.put(key, slot.value));
+        Mono.defer(() -> writer.write(values))
+                .defaultIfEmpty(Map.of())
+                .subscribe(failures -> complete(batch, failures, null),
+                        error -> complete(batch, Map.of(), error));
+    }
+
+    private void complete(Map<K, Slot<V>> batch, Map<K, Throwable> failures, Throwable error) {
+        batch.forEach((key, slot) -> {
+            Throwable failure = error != null ? error : failures.get(key);
+            for (MonoSink<V> caller : slot.callers) {
+                if (failure == null) {
+                    caller.success(slot.value);
+                } else {
+                    caller.error(failure);
+                }
+            }
+        });
+
+        List<Waiter<V>> resumed;
+        synchronized (this) {
+            flushing = false;
+            writing = 0;
+            resumed = new ArrayList<>(waiting);
+            waiting.clear();
+        }
+        resumed.forEach(this::offer);
+        flush();
+    }
+}
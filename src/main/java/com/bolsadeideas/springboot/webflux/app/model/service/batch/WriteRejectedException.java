@@ -0,0 +1,17 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.batch;
+
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A write turned away because the buffer and the writes waiting for room in it are full. Retrying it later can
+ * succeed, so it answers as 503.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class WriteRejectedException extends TransientDataAccessResourceException {
+
+    public WriteRejectedException(String msg) {
+        super(msg);
+    }
+}
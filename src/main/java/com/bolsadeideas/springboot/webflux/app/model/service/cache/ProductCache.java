@@ -0,0 +1,140 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.cache;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Read-through cache for single product lookups. Entries are evicted by size and TTL,
+ * and invalidated by the service on every write. Callers always receive their own copy,
+ * so mutating a returned product never changes the cached one. A load that overlaps an
+ * invalidation of the product it returns is handed to its caller but not cached.
+ */
+@Component
+public class ProductCache {
+
+    @Value("${config.cache.products.enabled:true}")
+    private boolean enabled;
+
+    @Value("${config.cache.products.max-size:10000}")
+    private long maxSize;
+
+    @Value("${config.cache.products.ttl:10m}")
+    private Duration ttl;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, Product> byId;
+
+    // name -> id, verified against the product on every hit so renames never serve a stale entry
+    private Cache<String, String> byName;
+
+    // every invalidation takes the next sequence number, a load only caches its product if that product
+    // was not invalidated after the load started
+    private final AtomicLong sequence = new AtomicLong();
+
+    private Cache<String, Long> invalidatedAt;
+
+    // the highest sequence number dropped from invalidatedAt, loads older than it are not trusted
+    private volatile long forgottenUpTo;
+
+    private Counter idHits;
+    private Counter idMisses;
+    private Counter nameHits;
+    private Counter nameMisses;
+
+    @PostConstruct
+    void init() {
+        byId = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).build();
+        byName = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).build();
+        invalidatedAt = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl)
+                .evictionListener((String id, Long invalidation, RemovalCause cause) -> forget(invalidation))
+                .build();
+
+        idHits = counter("id", "hit");
+        idMisses = counter("id", "miss");
+        nameHits = counter("name", "hit");
+        nameMisses = counter("name", "miss");
+        Gauge.builder("product.cache.size", byId, Cache::estimatedSize).register(meterRegistry);
+    }
+
+    public Mono<Product> findById(String id, Function<String, Mono<Product>> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+        return Mono.defer(() -> {
+            Product cached = byId.getIfPresent(id);
+            if (cached != null) {
+                idHits.increment();
+                return Mono.just(new Product(cached));
+            }
+            idMisses.increment();
+            long started = sequence.get();
+            return loader.apply(id).doOnNext(product -> put(product, started));
+        });
+    }
+
+    public Mono<Product> findByName(String name, Function<String, Mono<Product>> loader) {
+        if (!enabled) {
+            return loader.apply(name);
+        }
+        return Mono.defer(() -> {
+            String id = byName.getIfPresent(name);
+            Product cached = id == null ? null : byId.getIfPresent(id);
+            if (cached != null && name.equals(cached.getName())) {
+                nameHits.increment();
+                return Mono.just(new Product(cached));
+            }
+            nameMisses.increment();
+            long started = sequence.get();
+            return loader.apply(name).doOnNext(product -> put(product, started));
+        });
+    }
+
+    public synchronized void evict(String id) {
+        if (enabled && id != null) {
+            invalidatedAt.put(id, sequence.incrementAndGet());
+            Product cached = byId.getIfPresent(id);
+            if (cached != null && cached.getName() != null) {
+                byName.invalidate(cached.getName());
+            }
+            byId.invalidate(id);
+        }
+    }
+
+    private synchronized void put(Product product, long started) {
+        Long invalidation = invalidatedAt.getIfPresent(product.getId());
+        if (forgottenUpTo > started || (invalidation != null && invalidation > started)) {
+            return;
+        }
+        byId.put(product.getId(), new Product(product));
+        byName.put(product.getName(), product.getId());
+    }
+
+    private void forget(long invalidation) {
+        if (invalidation > forgottenUpTo) {
+            forgottenUpTo = invalidation;
+        }
+    }
+
+    private Counter counter(String lookup, String result) {
+        return Counter.builder("product.cache.requests")
+                .tag("lookup", lookup)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,47 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.cache;
+
+import io.micrometer.core.instrument.Counter;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent loads of the same key: while a load is in flight every other caller
+ * subscribes to the same {@link Mono} instead of starting a new one. The entry is dropped as soon
+ * as the load terminates, so later calls always see fresh data.
+ * Values are shared between the coalesced callers, copy them if they are mutable.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter coalesced;
+
+    public SingleFlight(Counter coalesced) {
+        this.coalesced = coalesced;
+    }
+
+    public Mono<V> execute(K key, Function<K, Mono<V>> loader) {
+        return Mono.defer(() -> {
+            AtomicReference<Mono<V>> self = new AtomicReference<>();
+            Mono<V> candidate = Mono.defer(() -> loader.apply(key))
+                    .doFinally(signal -> inFlight.remove(key, self.get()))
+                    .cache();
+            self.set(candidate);
+
+            Mono<V> existing = inFlight.putIfAbsent(key, candidate);
+            if (existing != null) {
+                coalesced.increment();
+                return existing;
+            }
+            return candidate;
+        });
+    }
+
+    public int size() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,121 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.feed;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductChange;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live feed of the products collection built on a Mongo change stream (which needs a replica set, hence opt-in).
+ * Every live subscriber shares one upstream cursor, and each one gets its own bounded buffer so a slow client
+ * can only lose its own events ({@code DROP_OLDEST}, {@code DROP_LATEST}) or be disconnected ({@code ERROR}).
+ * Subscribers resuming from a token get their own cursor starting right after that token.
+ */
+@Component
+public class ProductChangeFeed {
+
+    private static final String COLLECTION = "products";
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${config.change-feed.enabled:false}")
+    private boolean enabled;
+
+    @Value("${config.change-feed.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${config.change-feed.overflow:DROP_OLDEST}")
+    private BufferOverflowStrategy overflow;
+
+    @Value("${config.change-feed.heartbeat:15s}")
+    private Duration heartbeat;
+
+    private Flux<ProductChange> shared;
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    private Counter overflowed;
+
+    @PostConstruct
+    void init() {
+        shared = watch(null).publish().refCount();
+        overflowed = Counter.builder("product.feed.overflow")
+                .tag("strategy", overflow.name())
+                .register(meterRegistry);
+        Gauge.builder("product.feed.subscribers", subscribers, AtomicInteger::get).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @throws IllegalStateException when the feed is disabled
+     * @throws IllegalArgumentException when the resume token is not valid
+     */
+    public Flux<ProductChange> changes(String resumeToken) {
+        if (!enabled) {
+            throw new IllegalStateException("The change feed is disabled");
+        }
+        Flux<ProductChange> upstream = resumeToken == null || resumeToken.isBlank()
+                ? shared
+                : watch(ProductChange.decodeToken(resumeToken));
+
+        return upstream.onBackpressureBuffer(bufferSize, change -> overflowed.increment(), overflow)
+                .doOnSubscribe(subscription -> subscribers.incrementAndGet())
+                .doFinally(signal -> subscribers.decrementAndGet());
+    }
+
+    /**
+     * The changes as Server-Sent-Events whose id is the resume token, so browsers resume through
+     * {@code Last-Event-ID} on their own. Comments are sent on idle connections to keep proxies from closing them.
+     */
+    public Flux<ServerSentEvent<ProductChange>> events(String resumeToken) {
+        return changes(resumeToken)
+                .map(change -> ServerSentEvent.builder(change)
+                        .id(change.getResumeToken())
+                        .event(change.getOperation())
+                        .build())
+                .publish(events -> Flux.merge(events, Flux.interval(heartbeat)
+                        .map(tick -> ServerSentEvent.<ProductChange>builder().comment("heartbeat").build())
+                        .takeUntilOther(events.ignoreElements())));
+    }
+
+    private Flux<ProductChange> watch(BsonDocument resumeToken) {
+        ChangeStreamOptions.ChangeStreamOptionsBuilder options = ChangeStreamOptions.builder().returnFullDocumentOnUpdate();
+        if (resumeToken != null) {
+            options.resumeAfter(resumeToken);
+        }
+        return reactiveMongoTemplate.changeStream(COLLECTION, options.build(), Product.class)
+                .map(ProductChangeFeed::toChange);
+    }
+
+    private static ProductChange toChange(ChangeStreamEvent<Product> event) {
+        String operation = event.getOperationType() == null ? "unknown" : event.getOperationType().getValue();
+        BsonDocument key = event.getRaw() == null ? null : event.getRaw().getDocumentKey();
+        BsonValue id = key == null ? null : key.get("_id");
+        String productId = id == null ? null : id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+
+        return new ProductChange(operation, productId, event.getBody(), ProductChange.encodeToken(event.getResumeToken()));
+    }
+}
@@ -0,0 +1,254 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.image;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.ImageBlob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores images under the SHA-256 of their content, computed while the upload streams to a temporary file.
+ * References from products are counted in the {@code image_blobs} collection, and a periodic sweep deletes
+ * the files (and their resized variants) of blobs that stayed unreferenced for longer than the grace period.
+ */
+@Component
+public class ContentAddressedImageStorage implements ImageStorage {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentAddressedImageStorage.class);
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${config.upload.path}")
+    private String path;
+
+    @Value("${config.image.storage.gc-interval:1h}")
+    private Duration gcInterval;
+
+    @Value("${config.image.storage.gc-grace-period:1h}")
+    private Duration gcGracePeriod;
+
+    private Path directory;
+
+    private Disposable collector;
+
+    private Counter receivedBytes;
+
+    private DistributionSummary storedUploads;
+
+    private DistributionSummary duplicateUploads;
+
+    // the images whose upload is between its digest and its file being in place, the sweep leaves their files alone
+    private final Map<String, Integer> storing = new ConcurrentHashMap<>();
+
+    // held while a file is moved into place or a swept one is deleted
+    private final Object files = new Object();
+
+    @PostConstruct
+    void start() {
+        directory = Paths.get(path).toAbsolutePath().normalize();
+        receivedBytes = Counter.builder("product.upload.bytes")
+                .baseUnit("bytes")
+                .description("Bytes received by image uploads, including failed ones")
+                .register(meterRegistry);
+        storedUploads = uploadSize(false);
+        duplicateUploads = uploadSize(true);
+        collector = Flux.interval(gcInterval, gcInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> collectGarbage()
+                        .onErrorResume(e -> {
+                            log.warn("Image garbage collection failed: {}", e.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        collector.dispose();
+    }
+
+    @Override
+    public Mono<String> store(Flux<DataBuffer> content, String filename) {
+        return Mono.defer(() -> {
+            MessageDigest digest = sha256();
+            Path temp = directory.resolve(".upload-".concat(UUID.randomUUID().toString()).concat(".tmp"));
+
+            AtomicLong size = new AtomicLong();
+
+            return DataBufferUtils.write(content.doOnNext(buffer -> {
+                        int received = buffer.readableByteCount();
+                        size.addAndGet(received);
+                        receivedBytes.increment(received);
+                        update(digest, buffer);
+                    }), temp)
+                    .then(Mono.fromCallable(() -> HexFormat.of().formatHex(digest.digest()).concat(extension(filename))))
+                    .flatMap(image -> {
+                        storing.merge(image, 1, Integer::sum);
+                        // registers the blob, or renews the grace period of an unreferenced one, before the file is
+                        // placed, so that a sweep which already picked the blob can no longer remove it
+                        return changeRefs(image, 0)
+                                .then(Mono.fromCallable(() -> place(temp, image, size.get()))
+                                        .subscribeOn(Schedulers.boundedElastic()))
+                                .doFinally(signal -> storing.computeIfPresent(image, (key, count) -> count == 1 ? null : count - 1));
+                    })
+                    .onErrorResume(e -> Mono.fromCallable(() -> Files.deleteIfExists(temp))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .then(Mono.error(e)));
+        });
+    }
+
+    // an identical file is replaced rather than trusted, as a sweep may have deleted it since the blob was renewed
+    private String place(Path temp, String image, long size) throws IOException {
+        Path target = directory.resolve(image);
+        synchronized (files) {
+            boolean duplicate = Files.exists(target);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            (duplicate ? duplicateUploads : storedUploads).record(size);
+        }
+        return image;
+    }
+
+    @Override
+    public Path resolve(String image) {
+        // the name comes from a product document, so it may only designate a file directly inside the directory
+        Path resolved = directory.resolve(image).normalize();
+        if (!directory.equals(resolved.getParent())) {
+            throw new IllegalArgumentException("The image ".concat(image).concat(" is outside the image directory"));
+        }
+        return resolved;
+    }
+
+    @Override
+    public Mono<Void> retain(String image) {
+        return changeRefs(image, 1);
+    }
+
+    @Override
+    public Mono<Void> release(String image) {
+        return changeRefs(image, -1);
+    }
+
+    public Mono<Long> collectGarbage() {
+        Date threshold = new Date(System.currentTimeMillis() - gcGracePeriod.toMillis());
+        Criteria unreferenced = Criteria.where("refs").lte(0).and("updatedAt").lt(threshold);
+
+        return reactiveMongoTemplate.find(Query.query(unreferenced), ImageBlob.class)
+                .concatMap(blob -> reactiveMongoTemplate.findAndRemove(
+                        Query.query(Criteria.where("id").is(blob.getId()).andOperator(unreferenced)), ImageBlob.class))
+                // an upload of the same content registers the blob again before placing its file, which then stays
+                .filterWhen(blob -> reactiveMongoTemplate.exists(Query.query(Criteria.where("id").is(blob.getId())), ImageBlob.class)
+                        .map(exists -> !exists))
+                .concatMap(blob -> Mono.fromCallable(() -> deleteFiles(blob.getId()))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .count()
+                .doOnNext(count -> {
+                    if (count > 0) {
+                        log.info("Removed {} unreferenced images", count);
+                    }
+                });
+    }
+
+    private Mono<Void> changeRefs(String image, int delta) {
+        if (image == null) {
+            return Mono.empty();
+        }
+        return reactiveMongoTemplate.upsert(Query.query(Criteria.where("id").is(image)),
+                        new Update().inc("refs", delta).set("updatedAt", new Date()), ImageBlob.class)
+                .then();
+    }
+
+    private int deleteFiles(String image) throws IOException {
+        int deleted = 0;
+        List<String> names = new ArrayList<>(ImageProcessor.variantsOf(image));
+        names.add(image);
+        synchronized (files) {
+            // an upload in this process may have registered the blob after the check above
+            if (storing.containsKey(image)) {
+                return 0;
+            }
+            for (String name : names) {
+                Path resolved;
+                try {
+                    resolved = resolve(name);
+                } catch (IllegalArgumentException e) {
+                    log.warn("Skipped deleting {}: {}", name, e.getMessage());
+                    continue;
+                }
+                if (Files.deleteIfExists(resolved)) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private DistributionSummary uploadSize(boolean duplicate) {
+        return DistributionSummary.builder("product.upload.size")
+                .baseUnit("bytes")
+                .tag("duplicate", String.valueOf(duplicate))
+                .register(meterRegistry);
+    }
+
+    private static void update(MessageDigest digest, DataBuffer buffer) {
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                digest.update(iterator.next());
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String extension(String filename) {
+        int dot = filename == null ? -1 : filename.lastIndexOf('.');
+        if (dot < 0) {
+            return "";
+        }
+        String extension = filename.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return extension.matches("[a-z0-9]{1,8}") ? ".".concat(extension) : "";
+    }
+}
@@ -0,0 +1,184 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.image;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.service.IProductService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background stage that builds the thumbnail and medium variants of uploaded images.
+ * Uploads only enqueue a task, so the request completes once the original is on disk.
+ * The queue is bounded: when it is full the task is dropped and the product keeps serving the original.
+ */
+@Component
+public class ImageProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageProcessor.class);
+
+    private static final String THUMBNAIL = "thumb";
+
+    private static final String MEDIUM = "medium";
+
+    @Autowired
+    private IProductService productService;
+
+    @Autowired
+    private ImageStorage imageStorage;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${config.image.processing.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Value("${config.image.processing.threads:2}")
+    private int threads;
+
+    @Value("${config.image.processing.thumbnail-size:160}")
+    private int thumbnailSize;
+
+    @Value("${config.image.processing.medium-size:640}")
+    private int mediumSize;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private Sinks.Many<Product> queue;
+
+    private Scheduler scheduler;
+
+    private Disposable worker;
+
+    private Timer processingTimer;
+
+    private Counter rejected;
+
+    @PostConstruct
+    void start() {
+        scheduler = Schedulers.newBoundedElastic(threads, queueCapacity, "image-processing");
+        queue = Sinks.many().unicast().onBackpressureBuffer(new ArrayBlockingQueue<>(queueCapacity));
+        processingTimer = Timer.builder("product.image.processing").register(meterRegistry);
+        rejected = Counter.builder("product.image.processing.rejected").register(meterRegistry);
+        Gauge.builder("product.image.processing.queue", pending, AtomicInteger::get).register(meterRegistry);
+
+        worker = queue.asFlux()
+                .flatMap(product -> process(product).subscribeOn(scheduler), threads)
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        worker.dispose();
+        scheduler.dispose();
+    }
+
+    /**
+     * Enqueues the generation of the variants for the product's current image.
+     * Returns false if the queue is full.
+     */
+    public synchronized boolean submit(Product product) {
+        if (product.getImage() == null) {
+            return false;
+        }
+        if (queue.tryEmitNext(new Product(product)).isFailure()) {
+            rejected.increment();
+            log.warn("Image processing queue is full, skipping variants of {}", product.getImage());
+            return false;
+        }
+        pending.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Names of the resized variants of an image, they are stored next to it.
+     */
+    public static List<String> variantsOf(String image) {
+        return List.of(variantName(image, THUMBNAIL), variantName(image, MEDIUM));
+    }
+
+    private Mono<Void> process(Product product) {
+        return Mono.fromCallable(() -> {
+                    pending.decrementAndGet();
+                    return processingTimer.recordCallable(() -> {
+                        List<String> variants = variantsOf(product.getImage());
+                        // content addressed images share their variants, so they only need to be built once
+                        if (variants.stream().allMatch(variant -> Files.exists(imageStorage.resolve(variant)))) {
+                            return variants;
+                        }
+                        BufferedImage source = ImageIO.read(imageStorage.resolve(product.getImage()).toFile());
+                        if (source == null) {
+                            return List.<String>of();
+                        }
+                        writeVariant(source, product.getImage(), THUMBNAIL, thumbnailSize);
+                        writeVariant(source, product.getImage(), MEDIUM, mediumSize);
+                        return variants;
+                    });
+                })
+                .filter(variants -> !variants.isEmpty())
+                .flatMap(variants -> productService.setImageVariants(product.getId(), product.getImage(), variants.get(0), variants.get(1)))
+                .onErrorResume(e -> {
+                    log.warn("Could not process image {}: {}", product.getImage(), e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void writeVariant(BufferedImage source, String image, String prefix, int maxSize) throws IOException {
+        String format = format(image);
+
+        double scale = Math.min(1.0, (double) maxSize / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        boolean alpha = source.getColorModel().hasAlpha() && !"jpg".equals(format) && !"jpeg".equals(format);
+        BufferedImage target = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.drawImage(source, 0, 0, width, height, null);
+        graphics.dispose();
+
+        ImageIO.write(target, format, imageStorage.resolve(variantName(image, prefix)).toFile());
+    }
+
+    private static String variantName(String image, String prefix) {
+        String name = prefix.concat("-").concat(image);
+        String format = format(image);
+        return format.equals(extension(image)) ? name : name.concat(".").concat(format);
+    }
+
+    private static String format(String image) {
+        String extension = extension(image);
+        return Arrays.asList(ImageIO.getWriterFileSuffixes()).contains(extension) ? extension : "png";
+    }
+
+    private static String extension(String image) {
+        int dot = image.lastIndexOf('.');
+        return dot < 0 ? "" : image.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
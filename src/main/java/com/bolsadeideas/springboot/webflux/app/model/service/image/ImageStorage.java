@@ -0,0 +1,30 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.image;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+
+public interface ImageStorage {
+
+    /**
+     * Stores the content and emits the name of the stored image. Identical content is stored only once.
+     */
+    public Mono<String> store(Flux<DataBuffer> content, String filename);
+
+    /**
+     * The file of a stored image, refusing with an {@link IllegalArgumentException} a name that points outside the storage.
+     */
+    public Path resolve(String image);
+
+    /**
+     * Adds a reference from a product to the image.
+     */
+    public Mono<Void> retain(String image);
+
+    /**
+     * Drops a reference to the image. Images left without references are removed in the background.
+     */
+    public Mono<Void> release(String image);
+}
@@ -0,0 +1,47 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.image;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Finds the file behind an image of a product, for the v1 and v2 image endpoints alike.
+ */
+@Component
+public class ProductImages {
+
+    @Autowired
+    private ImageStorage imageStorage;
+
+    /**
+     * The {@code thumbnail}, {@code medium} or, for any other variant, the original image of the product. Empty when
+     * the product has no such image, when its file is gone, or when its name points outside the image directory.
+     */
+    public Mono<StoredImage> find(Product product, String variant) {
+        String image = switch (variant == null ? "original" : variant) {
+            case "thumbnail" -> product.getThumbnail();
+            case "medium" -> product.getMediumImage();
+            default -> product.getImage();
+        };
+        if (image == null) {
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> new FileSystemResource(imageStorage.resolve(image)))
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.empty())
+                // the stat is blocking file system access
+                .flatMap(resource -> Mono.fromCallable(() -> new StoredImage(resource,
+                                MediaTypeFactory.getMediaType(resource).orElse(MediaType.APPLICATION_OCTET_STREAM),
+                                Instant.ofEpochMilli(resource.lastModified()),
+                                resource.getFilename()))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(IOException.class, e -> Mono.empty()));
+    }
+}
@@ -0,0 +1,12 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.image;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+
+import java.time.Instant;
+
+/**
+ * An image file ready to be served, with the validators for conditional requests. Stored files are named by the
+ * digest of their content and never change, so the name is a strong ETag on its own.
+ */
+public record StoredImage(Resource resource, MediaType contentType, Instant lastModified, String etag) {}
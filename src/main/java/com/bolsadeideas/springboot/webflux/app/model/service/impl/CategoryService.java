@@ -3,17 +3,93 @@ package com.bolsadeideas.springboot.webflux.app.model.service.impl;
 import com.bolsadeideas.springboot.webflux.app.model.documents.Category;
 import com.bolsadeideas.springboot.webflux.app.model.repository.CategoryRepository;
 import com.bolsadeideas.springboot.webflux.app.model.service.ICategoryService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Categories are few and rarely change, so all of them are kept in memory: loaded at startup, updated on
+ * {@link #save(Category)} and, when watching is enabled, on changes made by other instances. Misses still
+ * fall back to Mongo and fill the cache.
+ */
 @Service
 public class CategoryService implements ICategoryService {
 
+    private static final Logger log = LoggerFactory.getLogger(CategoryService.class);
+
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Value("${config.cache.categories.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${config.cache.categories.watch:false}")
+    private boolean watch;
+
+    private final Map<String, Category> byId = new ConcurrentHashMap<>();
+
+    private final Map<String, Category> byName = new ConcurrentHashMap<>();
+
+    private Disposable watcher;
+
+    @PostConstruct
+    void start() {
+        if (cacheEnabled && watch) {
+            watcher = reactiveMongoTemplate.changeStream("categories", ChangeStreamOptions.builder().returnFullDocumentOnUpdate().build(), Category.class)
+                    .doOnNext(this::apply)
+                    .doOnError(e -> log.warn("Category change stream failed: {}", e.getMessage()))
+                    .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofMinutes(1)))
+                    .subscribe();
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (watcher != null) {
+            watcher.dispose();
+        }
+    }
+
+    /**
+     * Replaces the cached categories with the ones stored in Mongo.
+     */
+    public Mono<Void> reload() {
+        if (!cacheEnabled) {
+            return Mono.empty();
+        }
+        return categoryRepository.findAll()
+                .collectList()
+                .doOnNext(categories -> {
+                    byId.clear();
+                    byName.clear();
+                    categories.forEach(this::put);
+                })
+                .then();
+    }
+
     @Override
     public Flux<Category> findAll() {
         return categoryRepository.findAll();
@@ -21,17 +97,87 @@ public class CategoryService implements ICategoryService {
 
     @Override
     public Mono<Category> findById(String id) {
-        return categoryRepository.findById(id);
+        if (!cacheEnabled) {
+            return categoryRepository.findById(id);
+        }
+        return Mono.defer(() -> {
+            Category cached = byId.get(id);
+            return cached != null ? Mono.just(cached) : categoryRepository.findById(id).doOnNext(this::put);
+        });
+    }
+
+    @Override
+    public Mono<Map<String, Category>> findAllById(Collection<String> ids) {
+        return Mono.defer(() -> {
+            Map<String, Category> found = new HashMap<>();
+            List<String> missing = ids.stream()
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .filter(id -> {
+                        Category cached = cacheEnabled ? byId.get(id) : null;
+                        if (cached != null) {
+                            found.put(id, cached);
+                        }
+                        return cached == null;
+                    })
+                    .toList();
+            if (missing.isEmpty()) {
+                return Mono.just(found);
+            }
+            // one query for every miss of the batch
+            return categoryRepository.findAllById(missing)
+                    .doOnNext(category -> {
+                        if (cacheEnabled) {
+                            put(category);
+                        }
+                        found.put(category.getId(), category);
+                    })
+                    .then(Mono.just(found));
+        });
     }
 
     @Override
     public Mono<Category> save(Category category) {
-        return categoryRepository.save(category);
+        return categoryRepository.save(category)
+                .doOnNext(saved -> {
+                    if (cacheEnabled) {
+                        put(saved);
+                    }
+                });
     }
 
     @Override
     public Mono<Category> findByName(String name) {
-        return categoryRepository.findByName(name);
+        if (!cacheEnabled) {
+            return categoryRepository.findByName(name);
+        }
+        return Mono.defer(() -> {
+            Category cached = byName.get(name);
+            return cached != null ? Mono.just(cached) : categoryRepository.findByName(name).doOnNext(this::put);
+        });
     }
 
+    private void put(Category category) {
+        Category previous = byId.put(category.getId(), category);
+        if (previous != null && previous.getName() != null && !previous.getName().equals(category.getName())) {
+            byName.remove(previous.getName(), previous);
+        }
+        if (category.getName() != null) {
+            byName.put(category.getName(), category);
+        }
+    }
+
+    private void apply(ChangeStreamEvent<Category> event) {
+        if (event.getBody() != null) {
+            put(event.getBody());
+            return;
+        }
+        BsonValue id = event.getRaw() == null ? null : event.getRaw().getDocumentKey().get("_id");
+        if (id != null) {
+            Category removed = byId.remove(id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue());
+            if (removed != null && removed.getName() != null) {
+                byName.remove(removed.getName(), removed);
+            }
+        }
+    }
 }
@@ -0,0 +1,254 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.impl;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.CategorySummary;
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.service.ICategorySummaryService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Per-category statistics. When enabled they are kept in the {@code category_summaries} collection and moved by
+ * every write: counts and totals by {@code $inc}, the extremes by {@code $min}/{@code $max}, and only a removed
+ * extreme makes the category read its cheapest and dearest product again. Reading them costs one document per
+ * category instead of a scan of every product.
+ */
+@Service
+public class CategorySummaryService implements ICategorySummaryService {
+
+    private static final Logger log = LoggerFactory.getLogger(CategorySummaryService.class);
+
+    private static final int RECOMPUTE_ATTEMPTS = 5;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Value("${config.category-summaries.enabled:false}")
+    private boolean enabled;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public Flux<CategorySummary> findAll() {
+        return enabled
+                ? reactiveMongoTemplate.find(new Query().with(Sort.by("name")), CategorySummary.class)
+                : aggregate();
+    }
+
+    @Override
+    public Mono<Void> record(Product before, Product after) {
+        return record(List.of(new Change(before, after)));
+    }
+
+    @Override
+    public Mono<Void> record(Collection<Change> changes) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            // the writes of a batch are netted per category first, so that each category takes a single update
+            Map<String, Delta> deltas = new LinkedHashMap<>();
+            for (Change change : changes) {
+                Product before = change.before();
+                Product after = change.after();
+                if (before != null && after != null && Objects.equals(categoryIdOf(before), categoryIdOf(after))
+                        && Objects.equals(before.getPrice(), after.getPrice())) {
+                    continue;
+                }
+                if (categoryIdOf(before) != null) {
+                    deltas.computeIfAbsent(categoryIdOf(before), Delta::new).remove(before);
+                }
+                if (categoryIdOf(after) != null) {
+                    deltas.computeIfAbsent(categoryIdOf(after), Delta::new).add(after);
+                }
+            }
+            return Flux.fromIterable(deltas.values()).concatMap(this::apply).then();
+        });
+    }
+
+    private Mono<Void> apply(Delta delta) {
+        Update update = new Update()
+                .inc("count", delta.count)
+                .inc("totalPrice", delta.total)
+                .set("updatedAt", new Date())
+                .inc("revision", 1);
+        if (delta.name != null) {
+            update.set("name", delta.name);
+        }
+        if (delta.addedMin != null) {
+            update.min("minPrice", delta.addedMin).max("maxPrice", delta.addedMax);
+        }
+        return reactiveMongoTemplate.findAndModify(Query.query(Criteria.where("id").is(delta.categoryId)), update,
+                        FindAndModifyOptions.options().returnNew(true).upsert(true), CategorySummary.class)
+                .flatMap(summary -> {
+                    if (summary.getCount() <= 0) {
+                        // the last product of the category went away, unless another write came in since
+                        return reactiveMongoTemplate.remove(atRevision(summary.getId(), summary.getRevision()), CategorySummary.class).then();
+                    }
+                    return delta.removedAnExtreme(summary) ? recomputeExtremes(summary, RECOMPUTE_ATTEMPTS) : Mono.empty();
+                });
+    }
+
+    // the cheapest and dearest products are read off the category_price index, and only land on the summary if no
+    // other write moved it meanwhile, as they could otherwise undo the $min or $max of a newer product
+    private Mono<Void> recomputeExtremes(CategorySummary summary, int attempts) {
+        String id = summary.getId();
+        return Mono.zip(priceAt(id, Sort.Direction.ASC), priceAt(id, Sort.Direction.DESC))
+                .flatMap(extremes -> reactiveMongoTemplate.updateFirst(atRevision(id, summary.getRevision()),
+                        new Update().set("minPrice", extremes.getT1()).set("maxPrice", extremes.getT2()).inc("revision", 1),
+                        CategorySummary.class))
+                .flatMap(result -> {
+                    if (result.getMatchedCount() > 0) {
+                        return Mono.empty();
+                    }
+                    if (attempts <= 1) {
+                        log.warn("The price range of the category ".concat(id).concat(" kept changing, it is left as it is"));
+                        return Mono.empty();
+                    }
+                    return reactiveMongoTemplate.findById(id, CategorySummary.class)
+                            .flatMap(newer -> recomputeExtremes(newer, attempts - 1));
+                });
+    }
+
+    private Mono<Double> priceAt(String categoryId, Sort.Direction direction) {
+        Query query = Query.query(Criteria.where("category.id").is(categoryId).and("price").ne(null))
+                .with(Sort.by(direction, "price"))
+                .limit(1);
+        query.fields().include("price");
+        return reactiveMongoTemplate.findOne(query, Product.class).map(Product::getPrice);
+    }
+
+    private static Query atRevision(String id, long revision) {
+        return Query.query(Criteria.where("id").is(id).and("revision").is(revision));
+    }
+
+    /**
+     * Rebuilds every summary from the products. A summary some write moved while the products were aggregated
+     * keeps its own state, so the rebuild never takes back a newer change.
+     */
+    @Override
+    public Mono<Void> refreshAll() {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        Query revisions = new Query();
+        revisions.fields().include("revision");
+        return reactiveMongoTemplate.find(revisions, CategorySummary.class)
+                .collectMap(CategorySummary::getId, CategorySummary::getRevision)
+                .flatMap(known -> aggregate()
+                        .concatMap(summary -> replace(summary, known.get(summary.getId())).thenReturn(summary.getId()))
+                        .collect(Collectors.toSet())
+                        .flatMapMany(found -> Flux.fromIterable(known.entrySet()).filter(entry -> !found.contains(entry.getKey())))
+                        .concatMap(gone -> reactiveMongoTemplate.remove(atRevision(gone.getKey(), gone.getValue()), CategorySummary.class))
+                        .then());
+    }
+
+    private Mono<Void> replace(CategorySummary summary, Long revision) {
+        if (revision == null) {
+            // a write that created the summary meanwhile wins, like one that moved an existing summary
+            return reactiveMongoTemplate.insert(summary).then()
+                    .onErrorResume(DuplicateKeyException.class, e -> Mono.empty());
+        }
+        Update update = new Update()
+                .set("name", summary.getName())
+                .set("count", summary.getCount())
+                .set("minPrice", summary.getMinPrice())
+                .set("maxPrice", summary.getMaxPrice())
+                .set("totalPrice", summary.getTotalPrice())
+                .set("updatedAt", summary.getUpdatedAt())
+                .inc("revision", 1);
+        return reactiveMongoTemplate.updateFirst(atRevision(summary.getId(), revision), update, CategorySummary.class).then();
+    }
+
+    private Flux<CategorySummary> aggregate() {
+        TypedAggregation<Product> aggregation = Aggregation.newAggregation(Product.class,
+                Aggregation.group("category.id")
+                        .first("category.name").as("name")
+                        .count().as("count")
+                        .min("price").as("minPrice")
+                        .max("price").as("maxPrice")
+                        .sum("price").as("totalPrice"),
+                Aggregation.sort(Sort.by("name")));
+
+        return Mono.fromSupplier(Date::new)
+                .flatMapMany(now -> reactiveMongoTemplate.aggregate(aggregation, CategorySummary.class)
+                        .doOnNext(summary -> summary.setUpdatedAt(now)));
+    }
+
+    private static String categoryIdOf(Product product) {
+        return product == null || product.getCategory() == null ? null : product.getCategory().getId();
+    }
+
+    // the net effect of some writes on one category
+    private static final class Delta {
+
+        private final String categoryId;
+
+        private String name;
+
+        private long count;
+
+        private double total;
+
+        private Double addedMin;
+
+        private Double addedMax;
+
+        private Double removedMin;
+
+        private Double removedMax;
+
+        private Delta(String categoryId) {
+            this.categoryId = categoryId;
+        }
+
+        private void add(Product product) {
+            name = product.getCategory().getName();
+            count++;
+            Double price = product.getPrice();
+            if (price != null) {
+                total += price;
+                addedMin = addedMin == null ? price : Math.min(addedMin, price);
+                addedMax = addedMax == null ? price : Math.max(addedMax, price);
+            }
+        }
+
+        private void remove(Product product) {
+            count--;
+            Double price = product.getPrice();
+            if (price != null) {
+                total -= price;
+                removedMin = removedMin == null ? price : Math.min(removedMin, price);
+                removedMax = removedMax == null ? price : Math.max(removedMax, price);
+            }
+        }
+
+        private boolean removedAnExtreme(CategorySummary summary) {
+            return removedMin != null && (summary.getMinPrice() == null || removedMin <= summary.getMinPrice())
+                    || removedMax != null && (summary.getMaxPrice() == null || removedMax >= summary.getMaxPrice());
+        }
+    }
+}
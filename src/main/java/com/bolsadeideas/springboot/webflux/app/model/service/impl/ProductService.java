@@ -1,78 +1,816 @@
 package com.bolsadeideas.springboot.webflux.app.model.service.impl;
 
+import com.bolsadeideas.springboot.webflux.app.model.documents.Category;
 import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.dto.BulkItemResult;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductCursor;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductFilter;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductPage;
+import com.bolsadeideas.springboot.webflux.app.model.dto.ProductView;
 import com.bolsadeideas.springboot.webflux.app.model.repository.ProductRepository;
+import com.bolsadeideas.springboot.webflux.app.model.service.batch.ProductSaveBatcher;
+import com.bolsadeideas.springboot.webflux.app.model.service.cache.ProductCache;
+import com.bolsadeideas.springboot.webflux.app.model.service.cache.SingleFlight;
+import com.bolsadeideas.springboot.webflux.app.model.service.image.ImageStorage;
+import com.bolsadeideas.springboot.webflux.app.model.service.memory.InMemoryProductStore;
+import com.bolsadeideas.springboot.webflux.app.model.service.search.ProductSearchIndex;
+import com.bolsadeideas.springboot.webflux.app.model.service.ICategorySummaryService;
 import com.bolsadeideas.springboot.webflux.app.model.service.IProductService;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.validation.Validator;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.CriteriaDefinition;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.observability.micrometer.Micrometer;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @Service
 public class ProductService implements IProductService {
 
+    private static final Set<String> PATCHABLE_FIELDS = Set.of("name", "price", "category");
+
+    private static final Sort PAGE_ORDER = Sort.by("createdAt", "id");
+
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private ImageStorage imageStorage;
+
+    @Autowired
+    private ProductSearchIndex searchIndex;
+
+    @Autowired
+    private InMemoryProductStore productStore;
+
+    @Autowired
+    private ProductSaveBatcher saveBatcher;
+
+    @Autowired
+    private CategorySummaryService categorySummaryService;
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    private SingleFlight<String, Product> findByIdFlight;
+
+    private SingleFlight<String, Product> findByNameFlight;
+
+    private Mono<List<Product>> replaySnapshot;
+
+    @Value("${config.page.default-size:20}")
+    private int defaultPageSize;
+
+    @Value("${config.page.max-size:100}")
+    private int maxPageSize;
+
+    @Value("${config.stream.batch-size:256}")
+    private int streamBatchSize;
+
+    @Value("${config.replay.snapshot-ttl:30s}")
+    private Duration replaySnapshotTtl;
+
+    @Value("${config.replay.default-interval:100ms}")
+    private Duration replayDefaultInterval;
+
+    @Value("${config.replay.min-interval:10ms}")
+    private Duration replayMinInterval;
+
+    @Value("${config.replay.max-batch:100}")
+    private int replayMaxBatch;
+
+    @Value("${config.replay.max-repeat:1000}")
+    private int replayMaxRepeat;
+
+    @Value("${config.search.default-limit:10}")
+    private int defaultSearchLimit;
+
+    @Value("${config.search.max-limit:50}")
+    private int maxSearchLimit;
+
+    @PostConstruct
+    void init() {
+        findByIdFlight = new SingleFlight<>(coalescedCounter("id"));
+        findByNameFlight = new SingleFlight<>(coalescedCounter("name"));
+        // shared by every replay stream and read again once the ttl expires, a failed read is not kept
+        replaySnapshot = findAll()
+                .collectList()
+                .<List<Product>>map(Collections::unmodifiableList)
+                .cache(products -> replaySnapshotTtl, error -> Duration.ZERO, () -> replaySnapshotTtl);
+    }
+
     @Override
     public Flux<Product> findAll() {
-        return productRepository.findAll();
+        return productStore.isEnabled()
+                ? Flux.defer(() -> Flux.fromIterable(productStore.findAll()))
+                : productRepository.findAll();
     }
 
     @Override
-    public Flux<Product> findAllWthNameInUpperCase() {
-        return productRepository.findAll()
-                .map(product -> {
-                    product.setName(product.getName().toUpperCase());
-                    return product;
-                })
-                .log();
+    public Flux<Product> findAll(ProductFilter filter, ProductView view) {
+        if (productStore.isEnabled()) {
+            return observe("findAll", findInStore(filter, view));
+        }
+        return observe("findAll", filter.isEmpty() && !view.isProjected()
+                ? findAll()
+                : reactiveMongoTemplate.find(project(filter(filter), view), Product.class));
     }
 
     @Override
-    public Flux<Product> findAllWthDelay() {
-        return productRepository.findAll()
-                .map(product -> {
-                    product.setName(product.getName().toUpperCase());
-                    return product;
-                })
-                .delayElements(Duration.ofSeconds(1))
-                .log();
+    public Flux<Product> streamAll(ProductFilter filter, ProductView view) {
+        if (productStore.isEnabled()) {
+            return observe("streamAll", findInStore(filter, view));
+        }
+        // the cursor only fetches the next batch from Mongo once downstream has asked for it
+        return observe("streamAll", reactiveMongoTemplate.find(project(filter(filter).cursorBatchSize(streamBatchSize), view), Product.class)
+                .limitRate(streamBatchSize));
+    }
+
+    private Flux<Product> findInStore(ProductFilter filter, ProductView view) {
+        return Flux.defer(() -> Flux.fromIterable(productStore.find(matching(filter), filter.getSort(), Long.MAX_VALUE)))
+                .map(product -> project(product, view));
+    }
+
+    // the same conditions as filter(ProductFilter), for products held in memory
+    private static Predicate<Product> matching(ProductFilter filter) {
+        return product -> (filter.getCategoryId() == null
+                        || product.getCategory() != null && filter.getCategoryId().equals(product.getCategory().getId()))
+                && (filter.getMinPrice() == null || product.getPrice() != null && product.getPrice() >= filter.getMinPrice())
+                && (filter.getMaxPrice() == null || product.getPrice() != null && product.getPrice() <= filter.getMaxPrice())
+                && (filter.getCreatedFrom() == null
+                        || product.getCreatedAt() != null && !product.getCreatedAt().before(filter.getCreatedFrom()))
+                && (filter.getCreatedTo() == null
+                        || product.getCreatedAt() != null && product.getCreatedAt().before(filter.getCreatedTo()));
+    }
+
+    private static Query filter(ProductFilter filter) {
+        Query query = new Query();
+        if (filter.getCategoryId() != null) {
+            query.addCriteria(Criteria.where("category.id").is(filter.getCategoryId()));
+        }
+        if (filter.getMinPrice() != null || filter.getMaxPrice() != null) {
+            Criteria price = Criteria.where("price");
+            if (filter.getMinPrice() != null) {
+                price.gte(filter.getMinPrice());
+            }
+            if (filter.getMaxPrice() != null) {
+                price.lte(filter.getMaxPrice());
+            }
+            query.addCriteria(price);
+        }
+        if (filter.getCreatedFrom() != null || filter.getCreatedTo() != null) {
+            Criteria createdAt = Criteria.where("createdAt");
+            if (filter.getCreatedFrom() != null) {
+                createdAt.gte(filter.getCreatedFrom());
+            }
+            if (filter.getCreatedTo() != null) {
+                createdAt.lt(filter.getCreatedTo());
+            }
+            query.addCriteria(createdAt);
+        }
+        if (filter.getSort().isSorted()) {
+            // the id breaks ties so equal prices or names keep a stable order between requests
+            query.with(filter.getSort().and(Sort.by("id")));
+        }
+        return query;
+    }
+
+    private static Query project(Query query, ProductView view) {
+        if (view.isProjected()) {
+            query.fields().include(view.getFields());
+        }
+        return query;
+    }
+
+    private static Product project(Product product, ProductView view) {
+        if (!view.isProjected()) {
+            return product;
+        }
+        Product projected = new Product();
+        projected.setId(product.getId());
+        for (String field : view.getFields()) {
+            switch (field) {
+                case "name" -> projected.setName(product.getName());
+                case "price" -> projected.setPrice(product.getPrice());
+                case "thumbnail" -> projected.setThumbnail(product.getThumbnail());
+                default -> throw new IllegalStateException("The field ".concat(field).concat(" can not be projected"));
+            }
+        }
+        return projected;
     }
 
     @Override
-    public Flux<Product> findAllRepeat() {
-        return productRepository.findAll()
-                .map(product -> {
-                    product.setName(product.getName().toUpperCase());
-                    return product;
-                }).repeat(5000)
-                .log();
+    public Mono<String> findVersion(ProductFilter filter) {
+        if (productStore.isEnabled()) {
+            return Mono.fromSupplier(() -> {
+                List<Product> products = productStore.find(matching(filter), Sort.unsorted(), Long.MAX_VALUE);
+                Date lastModified = products.stream().map(Product::getLastModified).filter(date -> date != null)
+                        .max(Date::compareTo).orElse(null);
+                long versions = products.stream().map(Product::getVersion).filter(version -> version != null)
+                        .mapToLong(Long::longValue).sum();
+                return listVersion(products.size(), lastModified, versions);
+            });
+        }
+        Document criteria = filter(filter).getQueryObject();
+        Aggregation aggregation = Aggregation.newAggregation(Product.class,
+                Aggregation.match(new CriteriaDefinition() {
+                    @Override
+                    public Document getCriteriaObject() {
+                        return criteria;
+                    }
+
+                    @Override
+                    public String getKey() {
+                        return null;
+                    }
+                }),
+                Aggregation.group().count().as("count").max("lastModified").as("lastModified").sum("version").as("versions"));
+        return observe("findListVersion", reactiveMongoTemplate.aggregate(aggregation, Product.class, Document.class)
+                .next()
+                .map(result -> listVersion(((Number) result.get("count")).longValue(), result.getDate("lastModified"),
+                        ((Number) result.get("versions")).longValue()))
+                .defaultIfEmpty(listVersion(0, null, 0)));
+    }
+
+    // any write moves the latest modification and the sum of the versions, any add or remove moves the count
+    private static String listVersion(long count, Date lastModified, long versions) {
+        return String.valueOf(count).concat("-")
+                .concat(lastModified == null ? "0" : String.valueOf(lastModified.getTime())).concat("-")
+                .concat(String.valueOf(versions));
+    }
+
+    @Override
+    public Mono<ProductPage> findPage(String cursor, Integer size) {
+        int limit = size == null ? defaultPageSize : Math.max(1, Math.min(size, maxPageSize));
+        // one extra row tells us whether there is a next page without a count query
+        Pageable pageable = PageRequest.of(0, limit + 1, PAGE_ORDER);
+
+        Flux<Product> rows;
+        if (productStore.isEnabled()) {
+            rows = Flux.defer(() -> Flux.fromIterable(productStore.find(cursor == null || cursor.isBlank()
+                    ? product -> true
+                    : after(ProductCursor.decode(cursor)), PAGE_ORDER, limit + 1L)));
+        } else {
+            rows = cursor == null || cursor.isBlank()
+                    ? productRepository.findAllBy(pageable)
+                    : Mono.fromCallable(() -> ProductCursor.decode(cursor))
+                            .flatMapMany(position -> productRepository.findAllAfter(position.getCreatedAt(), position.getId(), pageable));
+        }
+
+        return observe("findPage", rows.collectList()
+                .map(products -> {
+                    if (products.size() <= limit) {
+                        return new ProductPage(products, null);
+                    }
+                    List<Product> content = products.subList(0, limit);
+                    return new ProductPage(content, ProductCursor.of(content.get(limit - 1)).encode());
+                }));
+    }
+
+    // the same condition as ProductRepository#findAllAfter
+    private static Predicate<Product> after(ProductCursor position) {
+        String id = position.getId().toHexString();
+        return product -> product.getCreatedAt() != null && (product.getCreatedAt().after(position.getCreatedAt())
+                || product.getCreatedAt().equals(position.getCreatedAt()) && product.getId().compareTo(id) > 0);
+    }
+
+    @Override
+    public Flux<Product> findAllWthNameInUpperCase() {
+        return findAll().map(ProductService::withNameInUpperCase);
+    }
+
+    @Override
+    public Flux<Product> replay(Duration interval, Integer batch, Integer repeat, boolean upperCase) {
+        Duration period = interval == null ? replayDefaultInterval : interval.compareTo(replayMinInterval) < 0 ? replayMinInterval : interval;
+        int size = batch == null ? 1 : Math.max(1, Math.min(batch, replayMaxBatch));
+        int times = repeat == null ? 1 : Math.max(1, Math.min(repeat, replayMaxRepeat));
+
+        Flux<Product> products = replaySnapshot.flatMapMany(Flux::fromIterable)
+                .repeat(times - 1L)
+                .map(product -> upperCase ? withNameInUpperCase(product) : product);
+
+        // a prefetch of one keeps a single tick in hand, the ones nobody asked for are dropped instead of bursting later
+        return products.buffer(size)
+                .zipWith(Flux.interval(Duration.ZERO, period).onBackpressureDrop(), 1, (chunk, tick) -> chunk)
+                .concatMapIterable(chunk -> chunk);
+    }
+
+    private static Product withNameInUpperCase(Product product) {
+        Product copy = new Product(product);
+        copy.setName(product.getName().toUpperCase());
+        return copy;
     }
 
     @Override
     public Mono<Product> findById(String id) {
-        return productRepository.findById(id);
+        if (productStore.isEnabled()) {
+            return observe("findById", Mono.fromSupplier(() -> productStore.findById(id)));
+        }
+        return observe("findById", productCache.findById(id, key -> findByIdFlight.execute(key, productRepository::findById).map(Product::new)));
+    }
+
+    @Override
+    public Product withoutImages(Product product) {
+        product.setImage(null);
+        product.setThumbnail(null);
+        product.setMediumImage(null);
+        return product;
+    }
+
+    @Override
+    public Mono<Product> withStoredCategory(Product product) {
+        String categoryId = product.getCategory() == null ? null : product.getCategory().getId();
+        if (categoryId == null) {
+            return Mono.error(new IllegalArgumentException(MISSING_CATEGORY));
+        }
+        return categoryService.findById(categoryId)
+                .switchIfEmpty(Mono.error(new IllegalArgumentException(UNKNOWN_CATEGORY)))
+                .map(category -> {
+                    product.setCategory(category);
+                    return product;
+                });
     }
 
     @Override
     public Mono<Product> save(Product product) {
+        if (product.getId() != null && !ObjectId.isValid(product.getId())) {
+            return Mono.error(new IllegalArgumentException("The id ".concat(product.getId()).concat(" is not an ObjectId")));
+        }
         if(product.getCreatedAt() == null){
             product.setCreatedAt(new Date());
         }
-        return productRepository.save(product);
+        product.setLastModified(new Date());
+        // a created product adds the first reference to its image, later changes go through saveWithImage
+        boolean created = product.getVersion() == null;
+        if (productStore.isEnabled()) {
+            return observe("save", Mono.fromCallable(() -> productStore.save(product))
+                    .doOnNext(this::written)
+                    .flatMap(saved -> created ? imageStorage.retain(saved.getImage()).thenReturn(saved) : Mono.just(saved)));
+        }
+        if (created || !categorySummaryService.isEnabled()) {
+            return observe("save", write(product, created, null));
+        }
+        // the summaries move by the difference to the stored product, which the version of the save pins down
+        Query query = Query.query(Criteria.where("id").is(product.getId()).and("version").is(product.getVersion()));
+        query.fields().include("price").include("category");
+        return observe("save", reactiveMongoTemplate.findOne(query, Product.class)
+                .flatMap(replaced -> write(product, false, replaced))
+                .switchIfEmpty(Mono.defer(() -> write(product, false, null))));
+    }
+
+    private Mono<Product> write(Product product, boolean created, Product replaced) {
+        Mono<Product> write = saveBatcher.isEnabled() ? saveBatcher.save(product) : productRepository.save(product);
+        return write
+                .doOnNext(this::written)
+                .flatMap(saved -> created ? imageStorage.retain(saved.getImage()).thenReturn(saved) : Mono.just(saved))
+                .flatMap(saved -> categorySummaryService.record(replaced, saved).thenReturn(saved));
+    }
+
+    @Override
+    public Mono<Product> saveWithImage(Product product, String image) {
+        boolean created = product.getVersion() == null;
+        String previous = created ? null : product.getImage();
+        if (!image.equals(previous)) {
+            product.setThumbnail(null);
+            product.setMediumImage(null);
+        }
+        product.setImage(image);
+
+        return save(product).flatMap(saved -> created || image.equals(previous)
+                ? Mono.just(saved)
+                : imageStorage.retain(image).then(imageStorage.release(previous)).thenReturn(saved));
+    }
+
+    @Override
+    public Flux<BulkItemResult> saveAll(List<Product> products) {
+        if (products.isEmpty()) {
+            return Flux.empty();
+        }
+        if (productStore.isEnabled()) {
+            return observe("saveAll", Flux.defer(() -> {
+                List<ImageMove> moves = new ArrayList<>();
+                List<BulkItemResult> results = saveAllInStore(products, moves);
+                return moveImages(moves).thenMany(Flux.fromIterable(results));
+            }));
+        }
+
+        // the products the upserts replace, read first so that image references and category summaries can move
+        // from them to the new state
+        boolean summaries = categorySummaryService.isEnabled();
+        List<String> replacing = products.stream()
+                .filter(product -> product.getId() != null && (product.getImage() != null || summaries))
+                .map(Product::getId)
+                .toList();
+        Mono<Map<String, Product>> previous = Mono.defer(() -> {
+            if (replacing.isEmpty()) {
+                return Mono.just(Map.of());
+            }
+            Query query = Query.query(Criteria.where("id").in(replacing));
+            query.fields().include("image").include("price").include("category").include("version");
+            return reactiveMongoTemplate.find(query, Product.class).collectMap(Product::getId);
+        });
+        return observe("saveAll", previous.flatMapMany(replaced -> bulkSave(products, replacing, replaced)));
+    }
+
+    private Flux<BulkItemResult> bulkSave(List<Product> products, List<String> replacing, Map<String, Product> previous) {
+        ReactiveBulkOperations bulk = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        Set<Integer> inserts = new HashSet<>();
+        Date now = new Date();
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            if (product.getCreatedAt() == null) {
+                product.setCreatedAt(now);
+            }
+            product.setLastModified(now);
+            if (product.getId() == null) {
+                product.setId(ObjectId.get().toHexString());
+                product.setVersion(0L);
+                bulk.insert(product);
+                inserts.add(i);
+            } else {
+                Query query = Query.query(Criteria.where("id").is(product.getId()));
+                Update update = new Update()
+                        .set("name", product.getName())
+                        .set("price", product.getPrice())
+                        .set("category", product.getCategory())
+                        .set("lastModified", now)
+                        .setOnInsert("createdAt", product.getCreatedAt())
+                        .inc("version", 1);
+                if (replacing.contains(product.getId())) {
+                    // a product changed since it was read fails this item instead of losing an image reference or
+                    // miscounting a category, one created meanwhile fails the insert of the upsert
+                    Product replaced = previous.get(product.getId());
+                    query.addCriteria(Criteria.where("version").is(replaced == null ? null : replaced.getVersion()));
+                }
+                if (product.getImage() != null) {
+                    update.set("image", product.getImage());
+                    // the variants belong to the replaced image, setImageVariants only fills them for the current one
+                    if (!product.getImage().equals(imageOf(previous.get(product.getId())))) {
+                        update.unset("thumbnail").unset("mediumImage");
+                    }
+                }
+                bulk.upsert(query, update);
+            }
+        }
+
+        return bulk.execute()
+                .map(result -> toItemResults(products, inserts, result, Collections.emptyMap()))
+                .onErrorResume(e -> Mono.just(toItemResults(products, inserts, e)))
+                .flatMapMany(results -> {
+                    List<ImageMove> moves = new ArrayList<>();
+                    List<ICategorySummaryService.Change> changes = new ArrayList<>();
+                    for (BulkItemResult result : results) {
+                        if (BulkItemResult.FAILED.equals(result.getStatus())) {
+                            continue;
+                        }
+                        Product product = products.get((int) result.getIndex());
+                        Product replaced = previous.get(product.getId());
+                        if (product.getImage() != null && !product.getImage().equals(imageOf(replaced))) {
+                            moves.add(new ImageMove(product.getImage(), imageOf(replaced)));
+                        }
+                        changes.add(new ICategorySummaryService.Change(replaced, product));
+                    }
+                    return moveImages(moves)
+                            .then(reindex(results))
+                            .then(categorySummaryService.record(changes))
+                            .thenMany(Flux.fromIterable(results));
+                })
+                .doOnComplete(() -> products.forEach(product -> productCache.evict(product.getId())));
+    }
+
+    private record ImageMove(String retained, String released) {}
+
+    private static String imageOf(Product product) {
+        return product == null ? null : product.getImage();
+    }
+
+    private Mono<Void> moveImages(List<ImageMove> moves) {
+        return Flux.fromIterable(moves)
+                .concatMap(move -> imageStorage.retain(move.retained()).then(imageStorage.release(move.released())))
+                .then();
+    }
+
+    // the bulk semantics of saveAll: products without id are inserted, the others upserted keeping their other fields
+    private List<BulkItemResult> saveAllInStore(List<Product> products, List<ImageMove> moves) {
+        List<BulkItemResult> results = new ArrayList<>(products.size());
+        Date now = new Date();
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            try {
+                Product saved = product.getId() == null ? null : productStore.update(product.getId(), null, current -> {
+                    current.setName(product.getName());
+                    current.setPrice(product.getPrice());
+                    current.setCategory(product.getCategory());
+                    if (product.getImage() != null && !product.getImage().equals(current.getImage())) {
+                        moves.add(new ImageMove(product.getImage(), current.getImage()));
+                        current.setImage(product.getImage());
+                        current.setThumbnail(null);
+                        current.setMediumImage(null);
+                    }
+                    return current;
+                });
+                String status = BulkItemResult.UPDATED;
+                if (saved == null) {
+                    if (product.getCreatedAt() == null) {
+                        product.setCreatedAt(now);
+                    }
+                    product.setVersion(null);
+                    saved = productStore.save(product);
+                    status = BulkItemResult.CREATED;
+                    if (saved.getImage() != null) {
+                        moves.add(new ImageMove(saved.getImage(), null));
+                    }
+                }
+                written(saved);
+                results.add(new BulkItemResult(i, saved.getId(), status, null));
+            } catch (RuntimeException e) {
+                results.add(BulkItemResult.failed(i, product.getId(), List.of(String.valueOf(e.getMessage()))));
+            }
+        }
+        return results;
+    }
+
+    private Mono<Void> reindex(List<BulkItemResult> results) {
+        // upserts only $set some fields, so the search index is refreshed from what Mongo now holds
+        List<String> ids = results.stream()
+                .filter(result -> !BulkItemResult.FAILED.equals(result.getStatus()))
+                .map(BulkItemResult::getId)
+                .toList();
+        return ids.isEmpty()
+                ? Mono.empty()
+                : reactiveMongoTemplate.find(Query.query(Criteria.where("id").in(ids)), Product.class)
+                        .doOnNext(searchIndex::index)
+                        .then();
+    }
+
+    private List<BulkItemResult> toItemResults(List<Product> products, Set<Integer> inserts, Throwable error) {
+        Throwable cause = error;
+        while (cause != null && !(cause instanceof MongoBulkWriteException)) {
+            cause = cause.getCause();
+        }
+        if (cause == null) {
+            // nothing tells us which writes made it, so report the whole chunk as failed
+            Map<Integer, String> failures = new HashMap<>();
+            for (int i = 0; i < products.size(); i++) {
+                failures.put(i, String.valueOf(error.getMessage()));
+            }
+            return toItemResults(products, inserts, null, failures);
+        }
+        MongoBulkWriteException bulkError = (MongoBulkWriteException) cause;
+        Map<Integer, String> failures = bulkError.getWriteErrors().stream()
+                .collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage));
+        return toItemResults(products, inserts, bulkError.getWriteResult(), failures);
+    }
+
+    private List<BulkItemResult> toItemResults(List<Product> products, Set<Integer> inserts, BulkWriteResult result,
+                                               Map<Integer, String> failures) {
+        Set<Integer> upserted = result == null ? Collections.emptySet() : result.getUpserts().stream()
+                .map(BulkWriteUpsert::getIndex)
+                .collect(Collectors.toSet());
+
+        List<BulkItemResult> results = new ArrayList<>(products.size());
+        for (int i = 0; i < products.size(); i++) {
+            String id = products.get(i).getId();
+            if (failures.containsKey(i)) {
+                results.add(BulkItemResult.failed(i, id, List.of(failures.get(i))));
+            } else {
+                String status = inserts.contains(i) || upserted.contains(i) ? BulkItemResult.CREATED : BulkItemResult.UPDATED;
+                results.add(new BulkItemResult(i, id, status, null));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public Mono<Product> patch(String id, Map<String, Object> fields, Long version) {
+        if (productStore.isEnabled()) {
+            return observe("patch", Mono.fromCallable(() -> {
+                        validate(fields);
+                        return productStore.update(id, version, current -> apply(current, fields));
+                    })
+                    .doOnNext(this::written));
+        }
+        return observe("patch", Mono.defer(() -> {
+            validate(fields);
+            Query query = Query.query(Criteria.where("id").is(id));
+            if (version != null) {
+                query.addCriteria(Criteria.where("version").is(version));
+            }
+
+            Date now = new Date();
+            Update update = new Update();
+            fields.forEach(update::set);
+            update.set("lastModified", now).inc("version", 1);
+
+            // the product as it was tells the summaries what the patch moved, and the update only sets the given
+            // fields, so the product it left is that one with them applied
+            return reactiveMongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(false), Product.class)
+                    .switchIfEmpty(Mono.defer(() -> version == null ? Mono.empty() : versionConflict(id, version)))
+                    .flatMap(before -> {
+                        Product updated = apply(new Product(before), fields);
+                        updated.setLastModified(now);
+                        updated.setVersion(before.getVersion() == null ? 1L : before.getVersion() + 1);
+                        written(updated);
+                        return categorySummaryService.record(before, updated).thenReturn(updated);
+                    });
+        }));
+    }
+
+    // the stored product was valid, so checking every changed field against its constraints validates the result
+    private void validate(Map<String, Object> fields) {
+        fields.forEach((field, value) -> {
+            if (!PATCHABLE_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("The field ".concat(field).concat(" can not be updated"));
+            }
+            validator.validateValue(Product.class, field, value).stream().findFirst().ifPresent(violation -> {
+                throw new IllegalArgumentException("The Field ".concat(field).concat(" ").concat(violation.getMessage()));
+            });
+        });
+    }
+
+    private static Product apply(Product product, Map<String, Object> fields) {
+        fields.forEach((field, value) -> {
+            switch (field) {
+                case "name" -> product.setName((String) value);
+                case "price" -> product.setPrice(value == null ? null : ((Number) value).doubleValue());
+                case "category" -> product.setCategory((Category) value);
+                default -> throw new IllegalArgumentException("The field ".concat(field).concat(" can not be updated"));
+            }
+        });
+        return product;
+    }
+
+    private Mono<Product> versionConflict(String id, Long version) {
+        return reactiveMongoTemplate.exists(Query.query(Criteria.where("id").is(id)), Product.class)
+                .flatMap(exists -> exists
+                        ? Mono.error(new OptimisticLockingFailureException("The product ".concat(id)
+                                .concat(" is no longer at version ").concat(String.valueOf(version))))
+                        : Mono.empty());
+    }
+
+    @Override
+    public Mono<Product> setImageVariants(String id, String image, String thumbnail, String mediumImage) {
+        if (productStore.isEnabled()) {
+            return Mono.fromCallable(() -> productStore.update(id, null, current -> {
+                if (!image.equals(current.getImage())) {
+                    return null;
+                }
+                current.setThumbnail(thumbnail);
+                current.setMediumImage(mediumImage);
+                return current;
+            })).doOnNext(this::written);
+        }
+        Query query = Query.query(Criteria.where("id").is(id).and("image").is(image));
+        Update update = new Update()
+                .set("thumbnail", thumbnail)
+                .set("mediumImage", mediumImage)
+                .set("lastModified", new Date())
+                .inc("version", 1);
+
+        return reactiveMongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Product.class)
+                .doOnNext(this::written);
     }
 
     @Override
     public Mono<Void> delete(Product product) {
-        return productRepository.delete(product);
+        if (productStore.isEnabled()) {
+            return Mono.fromRunnable(() -> productStore.remove(product.getId()))
+                    .then(imageStorage.release(product.getImage()))
+                    .doOnSuccess(unused -> removed(product.getId()));
+        }
+        return productRepository.delete(product)
+                .then(imageStorage.release(product.getImage()))
+                .doOnSuccess(unused -> removed(product.getId()))
+                .then(categorySummaryService.record(product, null));
+    }
+
+    @Override
+    public Mono<Boolean> deleteById(String id) {
+        if (productStore.isEnabled()) {
+            return observe("deleteById", Mono.fromCallable(() -> productStore.remove(id))
+                    .flatMap(removed -> imageStorage.release(removed.getImage()).thenReturn(true))
+                    .defaultIfEmpty(false)
+                    .doOnSuccess(unused -> removed(id)));
+        }
+        // findAndRemove is still a single round trip and tells us which image loses a reference and which category a
+        // product, only those fields come back
+        Query query = Query.query(Criteria.where("id").is(id));
+        query.fields().include("image").include("price").include("category");
+        return observe("deleteById", reactiveMongoTemplate.findAndRemove(query, Product.class)
+                .flatMap(removed -> imageStorage.release(removed.getImage())
+                        .then(categorySummaryService.record(removed, null))
+                        .thenReturn(true))
+                .defaultIfEmpty(false)
+                .doOnSuccess(unused -> removed(id)));
     }
 
     @Override
     public Mono<Product> findByName(String name) {
-        return productRepository.findByName(name);
+        if (productStore.isEnabled()) {
+            return observe("findByName", Mono.fromSupplier(() -> productStore.findByName(name)));
+        }
+        return observe("findByName", productCache.findByName(name, key -> findByNameFlight.execute(key, productRepository::findByName).map(Product::new)));
+    }
+
+    @Override
+    public Flux<Product> search(String query, Integer limit) {
+        int max = limit == null ? defaultSearchLimit : Math.max(1, Math.min(limit, maxSearchLimit));
+        return Flux.defer(() -> Flux.fromIterable(searchIndex.search(query, max)));
+    }
+
+    @Override
+    public Flux<Product> findTopByPrice(String categoryId, Integer limit) {
+        int max = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        if (productStore.isEnabled()) {
+            Predicate<Product> inCategory = categoryId == null || categoryId.isBlank()
+                    ? product -> true
+                    : product -> product.getCategory() != null && categoryId.equals(product.getCategory().getId());
+            return observe("findTopByPrice", Flux.defer(() -> Flux.fromIterable(
+                    productStore.find(inCategory, Sort.by(Sort.Direction.DESC, "price"), max))));
+        }
+        List<AggregationOperation> operations = new ArrayList<>();
+        if (categoryId != null && !categoryId.isBlank()) {
+            operations.add(Aggregation.match(Criteria.where("category.id").is(categoryId)));
+        }
+        // sort followed by limit lets Mongo keep only the top documents, walking the price indexes backwards
+        operations.add(Aggregation.sort(Sort.by(Sort.Direction.DESC, "price")));
+        operations.add(Aggregation.limit(max));
+        return observe("findTopByPrice", reactiveMongoTemplate.aggregate(Aggregation.newAggregation(Product.class, operations), Product.class));
+    }
+
+    private void written(Product product) {
+        productCache.evict(product.getId());
+        searchIndex.index(product);
+    }
+
+    private void removed(String id) {
+        productCache.evict(id);
+        searchIndex.remove(id);
+    }
+
+    // one timer and one span per call, told apart by the method tag
+    private <T> Mono<T> observe(String method, Mono<T> publisher) {
+        return publisher.name("product.service").tag("method", method).tap(Micrometer.observation(observationRegistry));
+    }
+
+    private <T> Flux<T> observe(String method, Flux<T> publisher) {
+        return publisher.name("product.service").tag("method", method).tap(Micrometer.observation(observationRegistry));
+    }
+
+    private Counter coalescedCounter(String lookup) {
+        return Counter.builder("product.lookup.coalesced")
+                .tag("lookup", lookup)
+                .register(meterRegistry);
     }
 }
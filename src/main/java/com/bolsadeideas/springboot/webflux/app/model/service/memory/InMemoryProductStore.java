@@ -0,0 +1,348 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.memory;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.service.ICategorySummaryService;
+import com.bolsadeideas.springboot.webflux.app.model.service.impl.CategorySummaryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The products held in process for {@code config.storage.mode=memory}: a primary-key map plus a name index,
+ * filled at startup from Mongo or from a JSON snapshot file. Reads are lock free and never leave the JVM,
+ * writes are serialized and, with write-behind enabled, mirrored to Mongo in bulk every interval. A product
+ * written several times between two flushes is sent once, in its latest state.
+ * Stored products are never handed out, callers always get copies.
+ */
+@Component
+public class InMemoryProductStore {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryProductStore.class);
+
+    private static final String MONGO = "mongo";
+
+    private static final String MEMORY = "memory";
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private CategorySummaryService categorySummaryService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${config.storage.mode:mongo}")
+    private String mode;
+
+    @Value("${config.storage.snapshot-file:}")
+    private String snapshotFile;
+
+    @Value("${config.storage.write-behind.enabled:true}")
+    private boolean writeBehind;
+
+    @Value("${config.storage.write-behind.interval:1s}")
+    private Duration writeBehindInterval;
+
+    @Value("${config.storage.write-behind.batch-size:500}")
+    private int writeBehindBatchSize;
+
+    private boolean enabled;
+
+    private final Map<String, Product> byId = new ConcurrentHashMap<>();
+
+    private final Map<String, String> byName = new ConcurrentHashMap<>();
+
+    // the latest unflushed write of every id, a null product stands for a delete
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private Timer flushTimer;
+
+    private Disposable flusher;
+
+    // flushed is what Mongo holds for the id before the write goes out, null when it holds nothing
+    private record Pending(long sequence, Product product, Product flushed) {}
+
+    @PostConstruct
+    void init() {
+        if (!MONGO.equalsIgnoreCase(mode) && !MEMORY.equalsIgnoreCase(mode)) {
+            throw new IllegalStateException("The storage mode ".concat(mode).concat(" is not one of mongo, memory"));
+        }
+        enabled = MEMORY.equalsIgnoreCase(mode);
+        if (!enabled) {
+            return;
+        }
+        flushTimer = Timer.builder("product.store.flush").register(meterRegistry);
+        Gauge.builder("product.store.size", byId, Map::size).register(meterRegistry);
+        Gauge.builder("product.store.pending", pending, Map::size).register(meterRegistry);
+        if (writeBehind) {
+            // a tick arriving while the previous flush still runs is skipped, the next one picks its writes up
+            flusher = Flux.interval(writeBehindInterval)
+                    .onBackpressureDrop()
+                    .concatMap(tick -> flush()
+                            .onErrorResume(e -> {
+                                log.warn("Write-behind of {} products failed, retrying on the next tick: {}", pending.size(), e.getMessage());
+                                return Mono.empty();
+                            }), 1)
+                    .subscribe();
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (flusher != null) {
+            flusher.dispose();
+            flush().block(Duration.ofSeconds(30));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Replaces the stored products with the snapshot file when one is configured, otherwise with the products in Mongo.
+     */
+    public Mono<Void> load() {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        boolean fromMongo = snapshotFile == null || snapshotFile.isBlank();
+        Flux<Product> source = fromMongo
+                ? reactiveMongoTemplate.findAll(Product.class)
+                : Mono.fromCallable(() -> objectMapper.readValue(new File(snapshotFile), Product[].class))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .flatMapMany(Flux::fromArray);
+
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return source.collectList()
+                    .doOnNext(products -> {
+                        synchronized (this) {
+                            byId.clear();
+                            byName.clear();
+                            products.forEach(this::put);
+                        }
+                        log.info("Product store loaded {} products from {} in {} ms", byId.size(),
+                                fromMongo ? MONGO : snapshotFile,
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    })
+                    .then();
+        });
+    }
+
+    public List<Product> findAll() {
+        return byId.values().stream().map(Product::new).toList();
+    }
+
+    /**
+     * The products matching the predicate in the given order, the id breaking ties, at most {@code limit} of them.
+     */
+    public List<Product> find(Predicate<Product> predicate, Sort sort, long limit) {
+        return byId.values().stream()
+                .filter(predicate)
+                .sorted(comparator(sort))
+                .limit(limit)
+                .map(Product::new)
+                .toList();
+    }
+
+    public Product findById(String id) {
+        Product product = id == null ? null : byId.get(id);
+        return product == null ? null : new Product(product);
+    }
+
+    public Product findByName(String name) {
+        String id = name == null ? null : byName.get(name);
+        return findById(id);
+    }
+
+    /**
+     * Inserts or replaces the product like a versioned Mongo save: a product carrying a version must still be at that
+     * version. The id, version, creation and modification dates given to it are also set on the argument.
+     */
+    public synchronized Product save(Product product) {
+        if (product.getId() == null) {
+            product.setId(ObjectId.get().toHexString());
+        }
+        if (product.getCreatedAt() == null) {
+            product.setCreatedAt(new Date());
+        }
+        Product current = byId.get(product.getId());
+        if (product.getVersion() != null && current != null && !product.getVersion().equals(current.getVersion())) {
+            throw conflict(product.getId(), product.getVersion());
+        }
+        product.setVersion(current == null || current.getVersion() == null ? 0L : current.getVersion() + 1);
+        product.setLastModified(new Date());
+        return written(current, new Product(product));
+    }
+
+    /**
+     * Stores what {@code update} makes of a copy of the product, which must still be at {@code version} when one is
+     * given. Returns null when there is no product with that id or when {@code update} returns null.
+     */
+    public synchronized Product update(String id, Long version, Function<Product, Product> update) {
+        Product current = byId.get(id);
+        if (current == null) {
+            return null;
+        }
+        if (version != null && !version.equals(current.getVersion())) {
+            throw conflict(id, version);
+        }
+        Product updated = update.apply(new Product(current));
+        if (updated == null) {
+            return null;
+        }
+        updated.setVersion(current.getVersion() == null ? 1L : current.getVersion() + 1);
+        updated.setLastModified(new Date());
+        return written(current, updated);
+    }
+
+    /**
+     * Removes the product, returns it or null when there was none.
+     */
+    public synchronized Product remove(String id) {
+        Product removed = id == null ? null : byId.remove(id);
+        if (removed == null) {
+            return null;
+        }
+        if (removed.getName() != null) {
+            byName.remove(removed.getName(), id);
+        }
+        if (writeBehind) {
+            pend(id, removed, null);
+        }
+        return new Product(removed);
+    }
+
+    private Product written(Product previous, Product product) {
+        put(product);
+        if (writeBehind) {
+            pend(product.getId(), previous, new Product(product));
+        }
+        return new Product(product);
+    }
+
+    // a write replacing an unflushed one takes over what Mongo holds from it, otherwise that is the previous state
+    private void pend(String id, Product previous, Product product) {
+        pending.compute(id, (key, unflushed) -> new Pending(sequence.incrementAndGet(), product,
+                unflushed == null ? previous : unflushed.flushed()));
+    }
+
+    private void put(Product product) {
+        Product previous = byId.put(product.getId(), product);
+        if (previous != null && previous.getName() != null && !previous.getName().equals(product.getName())) {
+            byName.remove(previous.getName(), previous.getId());
+        }
+        if (product.getName() != null) {
+            byName.put(product.getName(), product.getId());
+        }
+    }
+
+    /**
+     * Sends the pending writes to Mongo with unordered bulk operations of at most the batch size. Writes made while a
+     * batch is in flight stay pending, and so does a whole batch that failed.
+     */
+    public Mono<Void> flush() {
+        return Mono.defer(() -> {
+            if (pending.isEmpty()) {
+                return Mono.empty();
+            }
+            List<Map.Entry<String, Pending>> writes = pending.entrySet().stream()
+                    .map(entry -> Map.entry(entry.getKey(), entry.getValue()))
+                    .toList();
+            List<List<Map.Entry<String, Pending>>> batches = new ArrayList<>();
+            for (int i = 0; i < writes.size(); i += writeBehindBatchSize) {
+                batches.add(writes.subList(i, Math.min(writes.size(), i + writeBehindBatchSize)));
+            }
+            return Flux.fromIterable(batches).concatMap(this::flush).then();
+        });
+    }
+
+    private Mono<Void> flush(List<Map.Entry<String, Pending>> batch) {
+        ReactiveBulkOperations bulk = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        for (Map.Entry<String, Pending> write : batch) {
+            Query byKey = Query.query(Criteria.where("id").is(write.getKey()));
+            if (write.getValue().product() == null) {
+                bulk.remove(byKey);
+            } else {
+                bulk.replaceOne(byKey, write.getValue().product(), FindAndReplaceOptions.options().upsert());
+            }
+        }
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return bulk.execute()
+                    .doOnSuccess(result -> {
+                        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        // a write made while the batch was in flight now replaces what the batch sent
+                        batch.forEach(write -> pending.computeIfPresent(write.getKey(), (key, unflushed) -> unflushed == write.getValue()
+                                ? null
+                                : new Pending(unflushed.sequence(), unflushed.product(), write.getValue().product())));
+                    })
+                    // the summaries describe what Mongo holds, so they move with the flush rather than the write
+                    .then(categorySummaryService.record(batch.stream()
+                            .map(write -> new ICategorySummaryService.Change(write.getValue().flushed(), write.getValue().product()))
+                            .toList()));
+        });
+    }
+
+    private static OptimisticLockingFailureException conflict(String id, Long version) {
+        return new OptimisticLockingFailureException("The product ".concat(id)
+                .concat(" is no longer at version ").concat(String.valueOf(version)));
+    }
+
+    // the order Mongo would use for the same sort: nulls first, then the id
+    private static Comparator<Product> comparator(Sort sort) {
+        Comparator<Product> comparator = (left, right) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<Product> byProperty = switch (order.getProperty()) {
+                case "name" -> Comparator.comparing(Product::getName, Comparator.nullsFirst(Comparator.naturalOrder()));
+                case "price" -> Comparator.comparing(Product::getPrice, Comparator.nullsFirst(Comparator.naturalOrder()));
+                case "createdAt" -> Comparator.comparing(Product::getCreatedAt, Comparator.nullsFirst(Comparator.naturalOrder()));
+                case "id" -> Comparator.comparing(Product::getId);
+                default -> throw new IllegalArgumentException("Products can not be sorted by ".concat(order.getProperty()));
+            };
+            comparator = comparator.thenComparing(order.isDescending() ? byProperty.reversed() : byProperty);
+        }
+        return comparator.thenComparing(Product::getId);
+    }
+}
@@ -0,0 +1,185 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.search;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-process prefix index over product and category names. Every token points to the ids of the products
+ * containing it, and the sorted map answers a prefix as a range scan, so search-as-you-type never reaches Mongo.
+ * Writes are serialized, reads are lock free and may briefly see a product half re-indexed.
+ */
+@Component
+public class ProductSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}");
+
+    private static final Comparator<Match> RANKING = Comparator.comparingInt(Match::score).reversed()
+            .thenComparingInt(match -> match.entry().name().length())
+            .thenComparing(match -> match.entry().name());
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ConcurrentSkipListMap<String, Set<String>> postings = new ConcurrentSkipListMap<>();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private Timer searchTimer;
+
+    private record Entry(Product product, String name, List<String> nameTokens, List<String> categoryTokens) {}
+
+    private record Match(Entry entry, int score) {}
+
+    @PostConstruct
+    void init() {
+        searchTimer = Timer.builder("product.search").register(meterRegistry);
+        Gauge.builder("product.search.index.size", entries, Map::size).register(meterRegistry);
+    }
+
+    public Mono<Void> rebuild(Flux<Product> products) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            clear();
+            return products.doOnNext(this::index)
+                    .then(Mono.fromRunnable(() -> log.info("Search index built with {} products in {} ms",
+                            entries.size(), (System.nanoTime() - start) / 1_000_000)));
+        });
+    }
+
+    public synchronized void index(Product product) {
+        remove(product.getId());
+
+        String categoryName = product.getCategory() == null ? null : product.getCategory().getName();
+        Entry entry = new Entry(new Product(product), normalize(product.getName()),
+                tokenize(product.getName()), tokenize(categoryName));
+        entries.put(product.getId(), entry);
+        for (String token : entry.nameTokens()) {
+            postings.computeIfAbsent(token, key -> ConcurrentHashMap.newKeySet()).add(product.getId());
+        }
+        for (String token : entry.categoryTokens()) {
+            postings.computeIfAbsent(token, key -> ConcurrentHashMap.newKeySet()).add(product.getId());
+        }
+    }
+
+    public synchronized void remove(String id) {
+        Entry entry = id == null ? null : entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        for (String token : entry.nameTokens()) {
+            unlink(token, id);
+        }
+        for (String token : entry.categoryTokens()) {
+            unlink(token, id);
+        }
+    }
+
+    private void unlink(String token, String id) {
+        postings.computeIfPresent(token, (key, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private synchronized void clear() {
+        entries.clear();
+        postings.clear();
+    }
+
+    /**
+     * Every term of the query must prefix a token of the product or of its category. Exact name tokens rank
+     * above name prefixes, which rank above category matches; shorter names win ties.
+     */
+    public List<Product> search(String query, int limit) {
+        return searchTimer.record(() -> {
+            List<String> terms = tokenize(query);
+            Set<String> candidates = null;
+            for (String term : terms) {
+                Set<String> ids = new HashSet<>();
+                postings.subMap(term, true, term.concat(String.valueOf(Character.MAX_VALUE)), true)
+                        .values()
+                        .forEach(ids::addAll);
+                if (candidates == null) {
+                    candidates = ids;
+                } else {
+                    candidates.retainAll(ids);
+                }
+                if (candidates.isEmpty()) {
+                    return List.<Product>of();
+                }
+            }
+            if (candidates == null) {
+                return List.<Product>of();
+            }
+
+            String phrase = String.join(" ", terms);
+            List<Match> matches = new ArrayList<>(candidates.size());
+            for (String id : candidates) {
+                Entry entry = entries.get(id);
+                if (entry != null) {
+                    matches.add(new Match(entry, score(entry, terms, phrase)));
+                }
+            }
+            return matches.stream()
+                    .sorted(RANKING)
+                    .limit(limit)
+                    .map(match -> new Product(match.entry().product()))
+                    .toList();
+        });
+    }
+
+    private static int score(Entry entry, List<String> terms, String phrase) {
+        int score = String.join(" ", entry.nameTokens()).startsWith(phrase) ? 3 : 0;
+        for (String term : terms) {
+            if (entry.nameTokens().contains(term)) {
+                score += 4;
+            } else if (entry.nameTokens().stream().anyMatch(token -> token.startsWith(term))) {
+                score += 2;
+            } else {
+                score += 1;
+            }
+        }
+        return score;
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    static List<String> tokenize(String text) {
+        return Arrays.stream(SEPARATORS.split(normalize(text)))
+                .filter(token -> !token.isEmpty())
+                .distinct()
+                .toList();
+    }
+}
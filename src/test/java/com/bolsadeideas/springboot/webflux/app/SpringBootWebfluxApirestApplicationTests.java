@@ -2,6 +2,7 @@ package com.bolsadeideas.springboot.webflux.app;
 
 import com.bolsadeideas.springboot.webflux.app.model.documents.Category;
 import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.dto.BulkItemResult;
 import com.bolsadeideas.springboot.webflux.app.model.service.ICategoryService;
 import com.bolsadeideas.springboot.webflux.app.model.service.IProductService;
 import com.bolsadeideas.springboot.webflux.app.model.service.impl.ProductService;
@@ -20,6 +21,7 @@ import reactor.core.publisher.Mono;
 import java.net.URI;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
@@ -53,6 +55,62 @@ class SpringBootWebfluxApirestApplicationTests {
 				});
 	}
 
+	@Test
+	void listSummariesAsNdjson() {
+		webTestClient.get()
+				.uri(productBaseURL.concat("?view=summary"))
+				.accept(MediaType.APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+				.expectBodyList(Product.class)
+				.consumeWith(response -> {
+					Product product = response.getResponseBody().get(0);
+					Assertions.assertNotNull(product.getName());
+					Assertions.assertNull(product.getCategory());
+				});
+	}
+
+	@Test
+	void listUnknownView() {
+		webTestClient.get()
+				.uri(productBaseURL.concat("?view=bogus"))
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isBadRequest();
+	}
+
+	@Test
+	void listPage() {
+		webTestClient.get()
+				.uri(productBaseURL.concat("/page?size={size}"), 3)
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(MediaType.APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.size").isEqualTo(3)
+				.jsonPath("$.content.length()").isEqualTo(3)
+				.jsonPath("$.next").isNotEmpty();
+	}
+
+	@Test
+	void listPageWithBadParameters() {
+		for (String path : List.of(productBaseURL.concat("/page"), "/api/v2/products/page")) {
+			webTestClient.get()
+					.uri(path.concat("?cursor={cursor}"), "bogus")
+					.exchange()
+					.expectStatus().isBadRequest()
+					.expectBody(String.class).isEqualTo("The cursor bogus is not valid");
+
+			webTestClient.get()
+					.uri(path.concat("?size={size}"), "ten")
+					.exchange()
+					.expectStatus().isBadRequest()
+					.expectBody(String.class).isEqualTo("The size must be a number");
+		}
+	}
+
 	@Test
 	void detail() {
 
@@ -117,6 +175,28 @@ class SpringBootWebfluxApirestApplicationTests {
 				});
 	}
 
+	@Test
+	void bulk(){
+		Category category = categoryService.findByName("Electronic").block();
+
+		webTestClient.post()
+				.uri("/api/v2/products/bulk")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_NDJSON)
+				.bodyValue(List.of(new Product("Samsung Z Flip", 4100000.00, category), new Product("", null, category)))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBodyList(BulkItemResult.class)
+				.consumeWith(response -> {
+					List<BulkItemResult> results = response.getResponseBody();
+					Assertions.assertEquals(2, results.size());
+					Assertions.assertEquals(BulkItemResult.FAILED, results.get(0).getStatus());
+					Assertions.assertEquals(1, results.get(0).getIndex());
+					Assertions.assertEquals(BulkItemResult.CREATED, results.get(1).getStatus());
+					Assertions.assertFalse(results.get(1).getId().isEmpty());
+				});
+	}
+
 	@Test
 	void edit(){
 		Category category = categoryService.findByName("Electronic").block();
@@ -138,6 +218,52 @@ class SpringBootWebfluxApirestApplicationTests {
 
 	}
 
+	@Test
+	void partialEdit(){
+		Product prod = productService.findByName("Samsung A24").block();
+
+		webTestClient.put()
+				.uri(productBaseURL.concat("/{id}"), Collections.singletonMap("id", prod.getId()))
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.bodyValue(Collections.singletonMap("price", 1500.00))
+				.exchange()
+				.expectStatus().isCreated()
+				.expectBody()
+				.jsonPath("$.name").isEqualTo(prod.getName())
+				.jsonPath("$.price").isEqualTo(1500.00)
+				.jsonPath("$.category.id").isEqualTo(prod.getCategory().getId());
+
+		webTestClient.put()
+				.uri(productBaseURL.concat("/{id}"), Collections.singletonMap("id", prod.getId()))
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(Collections.singletonMap("name", " "))
+				.exchange()
+				.expectStatus().isBadRequest();
+	}
+
+	@Test
+	void editWithoutCategoryId(){
+		Product prod = productService.findByName("Samsung A24").block();
+		Map<String, Object> body = Collections.singletonMap("category", Collections.singletonMap("name", "Electronic"));
+
+		webTestClient.put()
+				.uri("/api/v2/products/{id}", Collections.singletonMap("id", prod.getId()))
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(body)
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody()
+				.jsonPath("$[0]").isEqualTo("The Field category.id must not be empty");
+
+		webTestClient.put()
+				.uri(productBaseURL.concat("/{id}"), Collections.singletonMap("id", prod.getId()))
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(body)
+				.exchange()
+				.expectStatus().isBadRequest();
+	}
+
 	@Test
 	void delete(){
 		Product product = productService.findByName("Play Station 5 (PS5)").block();
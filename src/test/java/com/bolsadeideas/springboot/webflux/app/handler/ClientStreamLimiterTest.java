@@ -0,0 +1,42 @@
+package com.bolsadeideas.springboot.webflux.app.handler;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+class ClientStreamLimiterTest {
+
+	private ClientStreamLimiter limiter;
+
+	@BeforeEach
+	void setUp() {
+		limiter = new ClientStreamLimiter();
+		ReflectionTestUtils.setField(limiter, "maxStreamsPerClient", 1);
+	}
+
+	@Test
+	void aStreamNeverSubscribedHoldsNoSlot() {
+		limiter.limit("client", Flux.never());
+
+		StepVerifier.create(limiter.limit("client", Flux.just(1))).expectNext(1).verifyComplete();
+	}
+
+	@Test
+	void theSlotIsHeldUntilTheStreamIsCancelled() {
+		Disposable open = limiter.limit("client", Flux.never()).subscribe();
+
+		StepVerifier.create(limiter.limit("client", Flux.just(1)))
+				.expectErrorSatisfies(e -> Assertions.assertEquals(HttpStatus.TOO_MANY_REQUESTS, ((ResponseStatusException) e).getStatusCode()))
+				.verify();
+		StepVerifier.create(limiter.limit("other", Flux.just(1))).expectNext(1).verifyComplete();
+
+		open.dispose();
+		StepVerifier.create(limiter.limit("client", Flux.just(1))).expectNext(1).verifyComplete();
+	}
+}
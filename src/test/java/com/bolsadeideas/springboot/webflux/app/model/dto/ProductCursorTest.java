@@ -0,0 +1,25 @@
+package com.bolsadeideas.springboot.webflux.app.model.dto;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+class ProductCursorTest {
+
+	@Test
+	void encodeAndDecode() {
+		ProductCursor cursor = new ProductCursor(new Date(1700000000000L), new ObjectId());
+
+		ProductCursor decoded = ProductCursor.decode(cursor.encode());
+
+		Assertions.assertEquals(cursor.getCreatedAt(), decoded.getCreatedAt());
+		Assertions.assertEquals(cursor.getId(), decoded.getId());
+	}
+
+	@Test
+	void decodeInvalidToken() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> ProductCursor.decode("not-a-cursor"));
+	}
+}
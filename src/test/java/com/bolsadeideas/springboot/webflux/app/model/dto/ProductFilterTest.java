@@ -0,0 +1,35 @@
+package com.bolsadeideas.springboot.webflux.app.model.dto;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+import java.util.Map;
+
+class ProductFilterTest {
+
+	@Test
+	void parseParams() {
+		ProductFilter filter = ProductFilter.from(Map.of("categoryId", "c1", "minPrice", "10", "maxPrice", "20.5",
+				"createdFrom", "2024-01-01", "sort", "-price,name", "view", "summary"));
+
+		Assertions.assertEquals("c1", filter.getCategoryId());
+		Assertions.assertEquals(10.0, filter.getMinPrice());
+		Assertions.assertEquals(20.5, filter.getMaxPrice());
+		Assertions.assertEquals(1704067200000L, filter.getCreatedFrom().getTime());
+		Assertions.assertNull(filter.getCreatedTo());
+		Assertions.assertEquals(Sort.by(Sort.Order.desc("price"), Sort.Order.asc("name")), filter.getSort());
+	}
+
+	@Test
+	void emptyParams() {
+		Assertions.assertTrue(ProductFilter.from(Map.of()).isEmpty());
+	}
+
+	@Test
+	void rejectInvalidParams() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> ProductFilter.from(Map.of("minPrice", "cheap")));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> ProductFilter.from(Map.of("minPrice", "5", "maxPrice", "1")));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> ProductFilter.from(Map.of("sort", "image")));
+	}
+}
@@ -0,0 +1,114 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.batch;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+class WriteCoalescerTest {
+
+	private final Counter coalesced = new SimpleMeterRegistry().counter("coalesced");
+
+	private final List<Map<String, String>> batches = new CopyOnWriteArrayList<>();
+
+	@Test
+	void writesWithinTheWindowShareOneBatchAndTheLastWriteWins() {
+		WriteCoalescer<String, String> coalescer = new WriteCoalescer<>(key -> key.substring(0, 1), batch -> {
+			batches.add(batch);
+			return Mono.just(Map.of());
+		}, 10, Duration.ofMillis(50), 10, 10, coalesced);
+
+		StepVerifier.create(Flux.merge(coalescer.submit("a1"), coalescer.submit("b1"), coalescer.submit("a2")).collectList())
+				.assertNext(written -> Assertions.assertEquals(List.of("a2", "a2", "b1"), written.stream().sorted().toList()))
+				.verifyComplete();
+
+		Assertions.assertEquals(List.of(Map.of("a", "a2", "b", "b1")), batches);
+		Assertions.assertEquals(1.0, coalesced.count());
+	}
+
+	@Test
+	void aFullBatchLeavesBeforeTheWindowAndFailuresStayWithTheirKey() {
+		WriteCoalescer<String, String> coalescer = new WriteCoalescer<>(key -> key, batch -> {
+			batches.add(batch);
+			return Mono.just(Map.of("b", new IllegalStateException("rejected")));
+		}, 2, Duration.ofMinutes(1), 2, 2, coalesced);
+
+		StepVerifier.create(Mono.zip(coalescer.submit("a").materialize(), coalescer.submit("b").materialize()))
+				.assertNext(signals -> {
+					Assertions.assertEquals("a", signals.getT1().get());
+					Assertions.assertEquals("rejected", signals.getT2().getThrowable().getMessage());
+				})
+				.expectComplete()
+				.verify(Duration.ofSeconds(5));
+		Assertions.assertEquals(List.of("a", "b"), batches.get(0).keySet().stream().sorted().toList());
+	}
+
+	@Test
+	void newKeysWaitForRoomWhenTheBufferIsFull() {
+		Sinks.One<Map<String, Throwable>> acknowledged = Sinks.one();
+		WriteCoalescer<String, String> coalescer = new WriteCoalescer<>(key -> key, batch -> {
+			batches.add(batch);
+			return batches.size() == 1 ? acknowledged.asMono() : Mono.just(Map.of());
+		}, 1, Duration.ofMillis(1), 1, 1, coalesced);
+
+		coalescer.submit("a").subscribe();
+		Mono<String> second = coalescer.submit("b");
+
+		StepVerifier.create(second)
+				.expectSubscription()
+				.expectNoEvent(Duration.ofMillis(100))
+				.then(() -> {
+					Assertions.assertEquals(1, batches.size());
+					acknowledged.tryEmitValue(Map.of());
+				})
+				.expectNext("b")
+				.verifyComplete();
+	}
+
+	@Test
+	void newKeysFailWhenTooManyWaitForRoom() {
+		Sinks.One<Map<String, Throwable>> acknowledged = Sinks.one();
+		WriteCoalescer<String, String> coalescer = new WriteCoalescer<>(key -> key, batch -> {
+			batches.add(batch);
+			return batches.size() == 1 ? acknowledged.asMono() : Mono.just(Map.of());
+		}, 1, Duration.ofMillis(1), 1, 1, coalesced);
+
+		coalescer.submit("a").subscribe();
+		Mono<String> waiting = coalescer.submit("b").cache();
+		waiting.subscribe();
+
+		StepVerifier.create(coalescer.submit("c"))
+				.expectError(WriteRejectedException.class)
+				.verify(Duration.ofSeconds(5));
+
+		acknowledged.tryEmitValue(Map.of());
+		StepVerifier.create(waiting).expectNext("b").verifyComplete();
+	}
+
+	@Test
+	void aCancelledWaiterGivesUpItsPlace() {
+		Sinks.One<Map<String, Throwable>> acknowledged = Sinks.one();
+		WriteCoalescer<String, String> coalescer = new WriteCoalescer<>(key -> key, batch -> {
+			batches.add(batch);
+			return batches.size() == 1 ? acknowledged.asMono() : Mono.just(Map.of());
+		}, 1, Duration.ofMillis(1), 1, 1, coalesced);
+
+		coalescer.submit("a").subscribe();
+		coalescer.submit("b").subscribe().dispose();
+		Mono<String> third = coalescer.submit("c").cache();
+		third.subscribe();
+
+		acknowledged.tryEmitValue(Map.of());
+		StepVerifier.create(third).expectNext("c").verifyComplete();
+		Assertions.assertEquals(List.of(Map.of("a", "a"), Map.of("c", "c")), batches);
+	}
+}
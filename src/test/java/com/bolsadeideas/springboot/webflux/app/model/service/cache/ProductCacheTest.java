@@ -0,0 +1,96 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.cache;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ProductCacheTest {
+
+	private ProductCache productCache;
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@BeforeEach
+	void setUp() {
+		productCache = new ProductCache();
+		ReflectionTestUtils.setField(productCache, "enabled", true);
+		ReflectionTestUtils.setField(productCache, "maxSize", 100L);
+		ReflectionTestUtils.setField(productCache, "ttl", Duration.ofMinutes(1));
+		ReflectionTestUtils.setField(productCache, "meterRegistry", new SimpleMeterRegistry());
+		productCache.init();
+	}
+
+	@Test
+	void readThroughAndEvict() {
+		Assertions.assertEquals("Samsung A70", productCache.findById("1", this::load).block().getName());
+		Assertions.assertEquals("Samsung A70", productCache.findById("1", this::load).block().getName());
+		Assertions.assertEquals(1, loads.get());
+
+		productCache.evict("1");
+		productCache.findById("1", this::load).block();
+		Assertions.assertEquals(2, loads.get());
+	}
+
+	@Test
+	void findByNameHitsEntryLoadedById() {
+		productCache.findById("1", this::load).block();
+
+		Assertions.assertEquals("1", productCache.findByName("Samsung A70", name -> load("2")).block().getId());
+		Assertions.assertEquals(1, loads.get());
+	}
+
+	@Test
+	void findByNameMissesAfterEviction() {
+		productCache.findById("1", this::load).block();
+		productCache.evict("1");
+
+		productCache.findByName("Samsung A70", name -> load("1")).block();
+		Assertions.assertEquals(2, loads.get());
+	}
+
+	@Test
+	void aLoadOverlappingAnEvictionIsNotCached() {
+		Sinks.One<Product> loaded = Sinks.one();
+		Mono<Product> lookup = productCache.findById("1", id -> loaded.asMono());
+		lookup.subscribe();
+
+		productCache.evict("1");
+		loaded.tryEmitValue(load("1").block());
+
+		productCache.findById("1", this::load).block();
+		Assertions.assertEquals(2, loads.get());
+	}
+
+	@Test
+	void evictDropsTheNameEntry() {
+		productCache.findById("1", this::load).block();
+		productCache.evict("1");
+
+		@SuppressWarnings("unchecked")
+		Cache<String, String> byName = (Cache<String, String>) ReflectionTestUtils.getField(productCache, "byName");
+		Assertions.assertNull(byName.getIfPresent("Samsung A70"));
+	}
+
+	@Test
+	void callersGetTheirOwnCopy() {
+		productCache.findById("1", this::load).block().setName("changed");
+
+		Assertions.assertEquals("Samsung A70", productCache.findById("1", this::load).block().getName());
+	}
+
+	private Mono<Product> load(String id) {
+		loads.incrementAndGet();
+		Product product = new Product("Samsung A70", 63000.00);
+		product.setId(id);
+		return Mono.just(product);
+	}
+}
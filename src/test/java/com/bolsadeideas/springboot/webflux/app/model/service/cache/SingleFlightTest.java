@@ -0,0 +1,56 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SingleFlightTest {
+
+	private final Counter coalesced = new SimpleMeterRegistry().counter("coalesced");
+
+	private final SingleFlight<String, String> singleFlight = new SingleFlight<>(coalesced);
+
+	@Test
+	void concurrentCallsShareOneLoad() {
+		AtomicInteger loads = new AtomicInteger();
+		Sinks.One<String> result = Sinks.one();
+
+		Mono<String> first = singleFlight.execute("1", key -> {
+			loads.incrementAndGet();
+			return result.asMono();
+		});
+		Mono<String> second = singleFlight.execute("1", key -> {
+			loads.incrementAndGet();
+			return Mono.just("other");
+		});
+
+		StepVerifier.create(first.zipWith(second))
+				.then(() -> result.tryEmitValue("Samsung A70"))
+				.assertNext(values -> {
+					Assertions.assertEquals("Samsung A70", values.getT1());
+					Assertions.assertEquals("Samsung A70", values.getT2());
+				})
+				.verifyComplete();
+
+		Assertions.assertEquals(1, loads.get());
+		Assertions.assertEquals(1.0, coalesced.count());
+		Assertions.assertEquals(0, singleFlight.size());
+	}
+
+	@Test
+	void completedLoadIsNotReused() {
+		AtomicInteger loads = new AtomicInteger();
+
+		singleFlight.execute("1", key -> Mono.fromCallable(loads::incrementAndGet).map(String::valueOf)).block();
+		String second = singleFlight.execute("1", key -> Mono.fromCallable(loads::incrementAndGet).map(String::valueOf)).block();
+
+		Assertions.assertEquals("2", second);
+		Assertions.assertEquals(0.0, coalesced.count());
+	}
+}
@@ -0,0 +1,51 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.image;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+class ContentAddressedImageStorageTest {
+
+	@TempDir
+	private Path directory;
+
+	private ContentAddressedImageStorage storage;
+
+	@BeforeEach
+	void setUp() {
+		storage = new ContentAddressedImageStorage();
+		ReflectionTestUtils.setField(storage, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(storage, "path", directory.toString());
+		ReflectionTestUtils.setField(storage, "gcInterval", Duration.ofDays(1));
+		ReflectionTestUtils.setField(storage, "gcGracePeriod", Duration.ofDays(1));
+		storage.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		storage.stop();
+	}
+
+	@Test
+	void resolvesNamesInsideTheDirectory() {
+		String image = "a".repeat(64).concat(".png");
+
+		Assertions.assertEquals(directory.resolve(image).toAbsolutePath(), storage.resolve(image));
+		Assertions.assertEquals(directory.resolve("thumb-".concat(image)).toAbsolutePath(), storage.resolve("thumb-".concat(image)));
+	}
+
+	@Test
+	void refusesNamesLeavingTheDirectory() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> storage.resolve("../../../../etc/passwd"));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> storage.resolve("/etc/passwd"));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> storage.resolve("nested/../.."));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> storage.resolve("."));
+	}
+}
@@ -0,0 +1,70 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.image;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class ProductImagesTest {
+
+	@TempDir
+	private Path directory;
+
+	private ProductImages productImages;
+
+	private final Product product = new Product();
+
+	@BeforeEach
+	void setUp() throws IOException {
+		ImageStorage imageStorage = Mockito.mock(ImageStorage.class);
+		Mockito.when(imageStorage.resolve(ArgumentMatchers.anyString())).thenAnswer(invocation -> {
+			String image = invocation.getArgument(0);
+			if (image.contains("..")) {
+				throw new IllegalArgumentException("The image ".concat(image).concat(" is not in the storage"));
+			}
+			return directory.resolve(image);
+		});
+		productImages = new ProductImages();
+		ReflectionTestUtils.setField(productImages, "imageStorage", imageStorage);
+
+		Files.write(directory.resolve("abc.png"), new byte[] {1});
+		Files.write(directory.resolve("thumb-abc.png"), new byte[] {2});
+		product.setImage("abc.png");
+		product.setThumbnail("thumb-abc.png");
+	}
+
+	@Test
+	void findsTheVariantWithItsNameAsETag() {
+		StepVerifier.create(productImages.find(product, "thumbnail"))
+				.assertNext(image -> {
+					Assertions.assertEquals("thumb-abc.png", image.etag());
+					Assertions.assertEquals(MediaType.IMAGE_PNG, image.contentType());
+					Assertions.assertEquals("thumb-abc.png", image.resource().getFilename());
+				})
+				.verifyComplete();
+		StepVerifier.create(productImages.find(product, "original"))
+				.assertNext(image -> Assertions.assertEquals("abc.png", image.etag()))
+				.verifyComplete();
+	}
+
+	@Test
+	void aMissingOrForeignImageIsEmpty() {
+		StepVerifier.create(productImages.find(product, "medium")).verifyComplete();
+
+		product.setImage("gone.png");
+		StepVerifier.create(productImages.find(product, "original")).verifyComplete();
+
+		product.setImage("../../etc/passwd");
+		StepVerifier.create(productImages.find(product, "original")).verifyComplete();
+	}
+}
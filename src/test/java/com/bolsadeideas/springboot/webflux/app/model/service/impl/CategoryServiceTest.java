@@ -0,0 +1,71 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.impl;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Category;
+import com.bolsadeideas.springboot.webflux.app.model.repository.CategoryRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+class CategoryServiceTest {
+
+	private CategoryService categoryService;
+
+	private CategoryRepository categoryRepository;
+
+	@BeforeEach
+	void setUp() {
+		categoryRepository = Mockito.mock(CategoryRepository.class);
+		categoryService = new CategoryService();
+		ReflectionTestUtils.setField(categoryService, "categoryRepository", categoryRepository);
+		ReflectionTestUtils.setField(categoryService, "cacheEnabled", true);
+
+		Mockito.when(categoryRepository.findAll()).thenReturn(Flux.just(category("1", "Electronic"), category("2", "Gaming")));
+		categoryService.reload().block();
+	}
+
+	@Test
+	void lookupsAreAnsweredFromTheCache() {
+		Assertions.assertEquals("Electronic", categoryService.findById("1").block().getName());
+		Assertions.assertEquals("2", categoryService.findByName("Gaming").block().getId());
+
+		Mockito.verify(categoryRepository, Mockito.never()).findById(Mockito.anyString());
+		Mockito.verify(categoryRepository, Mockito.never()).findByName(Mockito.anyString());
+	}
+
+	@Test
+	void findAllByIdLoadsOnlyTheMisses() {
+		Mockito.when(categoryRepository.findAllById(List.of("3", "4"))).thenReturn(Flux.just(category("3", "Home")));
+
+		Map<String, Category> found = categoryService.findAllById(List.of("1", "3", "4", "1")).block();
+
+		Assertions.assertEquals("Electronic", found.get("1").getName());
+		Assertions.assertEquals("Home", found.get("3").getName());
+		Assertions.assertFalse(found.containsKey("4"));
+		Assertions.assertEquals("Home", categoryService.findById("3").block().getName());
+	}
+
+	@Test
+	void saveRefreshesRenamedCategory() {
+		Category renamed = category("1", "Electronics");
+		Mockito.when(categoryRepository.save(renamed)).thenReturn(Mono.just(renamed));
+		Mockito.when(categoryRepository.findByName("Electronic")).thenReturn(Mono.empty());
+
+		categoryService.save(renamed).block();
+
+		Assertions.assertEquals("1", categoryService.findByName("Electronics").block().getId());
+		Assertions.assertNull(categoryService.findByName("Electronic").block());
+	}
+
+	private static Category category(String id, String name) {
+		Category category = new Category(name);
+		category.setId(id);
+		return category;
+	}
+}
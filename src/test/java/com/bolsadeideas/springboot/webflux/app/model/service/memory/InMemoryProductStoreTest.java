@@ -0,0 +1,169 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.memory;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Category;
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import com.bolsadeideas.springboot.webflux.app.model.service.ICategorySummaryService;
+import com.bolsadeideas.springboot.webflux.app.model.service.impl.CategorySummaryService;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+class InMemoryProductStoreTest {
+
+	private InMemoryProductStore store;
+
+	private ReactiveMongoTemplate reactiveMongoTemplate;
+
+	private ReactiveBulkOperations bulk;
+
+	private CategorySummaryService categorySummaryService;
+
+	private final Category electronic = category("1", "Electronic");
+
+	@BeforeEach
+	void setUp() {
+		reactiveMongoTemplate = Mockito.mock(ReactiveMongoTemplate.class);
+		bulk = Mockito.mock(ReactiveBulkOperations.class);
+		Mockito.when(reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class)).thenReturn(bulk);
+		Mockito.when(bulk.execute()).thenReturn(Mono.just(Mockito.mock(BulkWriteResult.class)));
+		categorySummaryService = Mockito.mock(CategorySummaryService.class);
+		Mockito.when(categorySummaryService.record(ArgumentMatchers.anyCollection())).thenReturn(Mono.empty());
+
+		store = new InMemoryProductStore();
+		ReflectionTestUtils.setField(store, "reactiveMongoTemplate", reactiveMongoTemplate);
+		ReflectionTestUtils.setField(store, "categorySummaryService", categorySummaryService);
+		ReflectionTestUtils.setField(store, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(store, "mode", "memory");
+		ReflectionTestUtils.setField(store, "writeBehind", true);
+		ReflectionTestUtils.setField(store, "writeBehindInterval", Duration.ofHours(1));
+		ReflectionTestUtils.setField(store, "writeBehindBatchSize", 500);
+		store.init();
+
+		Mockito.when(reactiveMongoTemplate.findAll(Product.class)).thenReturn(Flux.just(
+				product("a", "Samsung s24", 2800000.00), product("b", "Play Station 5 (PS5)", 1340000.00)));
+		store.load().block();
+	}
+
+	@AfterEach
+	void tearDown() {
+		store.stop();
+	}
+
+	@Test
+	void readsAreAnsweredFromMemory() {
+		Assertions.assertEquals("Samsung s24", store.findById("a").getName());
+		Assertions.assertEquals("b", store.findByName("Play Station 5 (PS5)").getId());
+		Assertions.assertNull(store.findById("c"));
+		Assertions.assertEquals(List.of("b", "a"), store.find(product -> true, Sort.by("price"), 10)
+				.stream().map(Product::getId).toList());
+
+		store.findById("a").setName("changed by the caller");
+		Assertions.assertEquals("Samsung s24", store.findById("a").getName());
+	}
+
+	@Test
+	void saveChecksTheVersionAndKeepsTheNameIndex() {
+		Product renamed = store.findById("a");
+		renamed.setName("Samsung s24 plus");
+		Assertions.assertEquals(1L, store.save(renamed).getVersion());
+		Assertions.assertNotNull(store.findById("a").getLastModified());
+		Assertions.assertNull(store.findByName("Samsung s24"));
+		Assertions.assertEquals("a", store.findByName("Samsung s24 plus").getId());
+
+		renamed.setVersion(0L);
+		Assertions.assertThrows(OptimisticLockingFailureException.class, () -> store.save(renamed));
+
+		Product created = store.save(new Product("Samsung A70", 63000.00, electronic));
+		Assertions.assertNotNull(created.getId());
+		Assertions.assertEquals(0L, created.getVersion());
+	}
+
+	@Test
+	void flushSendsTheLatestStateOfEveryIdOnce() {
+		store.update("a", null, product -> {
+			product.setPrice(100.00);
+			return product;
+		});
+		store.update("a", null, product -> {
+			product.setPrice(200.00);
+			return product;
+		});
+		store.remove("b");
+		store.flush().block();
+
+		ArgumentCaptor<Object> replaced = ArgumentCaptor.forClass(Object.class);
+		Mockito.verify(bulk).replaceOne(ArgumentMatchers.any(Query.class), replaced.capture(), ArgumentMatchers.any(FindAndReplaceOptions.class));
+		Mockito.verify(bulk).remove(ArgumentMatchers.any(Query.class));
+		Assertions.assertEquals(200.00, ((Product) replaced.getValue()).getPrice());
+
+		store.flush().block();
+		Mockito.verify(bulk, Mockito.times(1)).execute();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void flushMovesTheSummariesFromWhatMongoHeld() {
+		store.update("a", null, product -> {
+			product.setPrice(100.00);
+			return product;
+		});
+		store.update("a", null, product -> {
+			product.setPrice(200.00);
+			return product;
+		});
+		store.remove("b");
+		store.flush().block();
+
+		ArgumentCaptor<Collection<ICategorySummaryService.Change>> changes = ArgumentCaptor.forClass(Collection.class);
+		Mockito.verify(categorySummaryService).record(changes.capture());
+		Map<String, ICategorySummaryService.Change> byId = changes.getValue().stream()
+				.collect(Collectors.toMap(change -> change.before().getId(), change -> change));
+		Assertions.assertEquals(2800000.00, byId.get("a").before().getPrice());
+		Assertions.assertEquals(200.00, byId.get("a").after().getPrice());
+		Assertions.assertEquals(1340000.00, byId.get("b").before().getPrice());
+		Assertions.assertNull(byId.get("b").after());
+
+		store.update("a", null, product -> {
+			product.setPrice(300.00);
+			return product;
+		});
+		store.flush().block();
+		Mockito.verify(categorySummaryService, Mockito.times(2)).record(changes.capture());
+		Assertions.assertEquals(200.00, changes.getValue().iterator().next().before().getPrice());
+	}
+
+	private Product product(String id, String name, Double price) {
+		Product product = new Product(name, price, electronic);
+		product.setId(id);
+		product.setVersion(0L);
+		return product;
+	}
+
+	private static Category category(String id, String name) {
+		Category category = new Category(name);
+		category.setId(id);
+		return category;
+	}
+}
@@ -0,0 +1,58 @@
+package com.bolsadeideas.springboot.webflux.app.model.service.search;
+
+import com.bolsadeideas.springboot.webflux.app.model.documents.Category;
+import com.bolsadeideas.springboot.webflux.app.model.documents.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+class ProductSearchIndexTest {
+
+	private ProductSearchIndex searchIndex;
+
+	@BeforeEach
+	void setUp() {
+		searchIndex = new ProductSearchIndex();
+		ReflectionTestUtils.setField(searchIndex, "meterRegistry", new SimpleMeterRegistry());
+		searchIndex.init();
+
+		Category electronic = new Category("Electronic");
+		Category gaming = new Category("Gaming");
+		searchIndex.rebuild(Flux.just(product("1", "Samsung s24 plus", electronic),
+				product("2", "Samsung s24", electronic),
+				product("3", "Play Station 5 (PS5)", gaming))).block();
+	}
+
+	@Test
+	void searchByPrefixRanksExactTokensFirst() {
+		Assertions.assertEquals(List.of("2", "1"), ids(searchIndex.search("sams s24", 10)));
+		Assertions.assertEquals(List.of("1"), ids(searchIndex.search("samsung PLU", 10)));
+		Assertions.assertEquals(List.of("3"), ids(searchIndex.search("gam", 10)));
+		Assertions.assertEquals(List.of("2"), ids(searchIndex.search("samsung", 1)));
+	}
+
+	@Test
+	void reindexAndRemove() {
+		searchIndex.index(product("2", "Galaxy Tab", new Category("Electronic")));
+		Assertions.assertEquals(List.of("1"), ids(searchIndex.search("s24", 10)));
+		Assertions.assertEquals(List.of("2"), ids(searchIndex.search("galaxy", 10)));
+
+		searchIndex.remove("2");
+		Assertions.assertTrue(searchIndex.search("galaxy", 10).isEmpty());
+	}
+
+	private static Product product(String id, String name, Category category) {
+		Product product = new Product(name, 100.00, category);
+		product.setId(id);
+		return product;
+	}
+
+	private static List<String> ids(List<Product> products) {
+		return products.stream().map(Product::getId).toList();
+	}
+}